@@ -5,18 +5,21 @@ layout (location=1) in vec4 aColor;
 layout (location=2) in vec2 aTexCoords;
 layout (location=3) in float aTexId;
 
-uniform mat4 uProjection;
-uniform mat4 uView;
+layout (std140) uniform Camera
+{
+    mat4 uProjection;
+    mat4 uView;
+};
 
 out vec4 fColor;
 out vec2 fTexCoords;
-out float fTexId;
+flat out int fTexId;
 
 void main()
 {
     fColor = aColor;
     fTexCoords = aTexCoords;
-    fTexId = aTexId;
+    fTexId = int(aTexId + 0.5);
 
     gl_Position = uProjection * uView * vec4(aPos, 1.0);
 }
@@ -26,17 +29,19 @@ void main()
 
 in vec4 fColor;
 in vec2 fTexCoords;
-in float fTexId;
+flat in int fTexId;
 
-uniform sampler2D uTextures[8];
+uniform sampler2D uTextures[9];
+uniform sampler2DArray uTextureArray;
 
 out vec4 color;
 
 void main()
 {
-    if (fTexId > 0) {
-        int id = int(fTexId);
-        color = fColor * texture(uTextures[id], fTexCoords);
+    if (fTexId >= 16) {
+        color = fColor * texture(uTextureArray, vec3(fTexCoords, fTexId - 16));
+    } else if (fTexId > 0) {
+        color = fColor * texture(uTextures[fTexId], fTexCoords);
         //color = vec4(fTexCoords, 0, 1);
     } else {
         color = fColor;
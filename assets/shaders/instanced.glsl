@@ -0,0 +1,50 @@
+#type vertex
+#version 330 core
+layout (location=0) in vec2 aCorner;
+layout (location=1) in vec2 aPos;
+layout (location=2) in vec2 aScale;
+layout (location=3) in vec4 aColor;
+layout (location=4) in vec4 aUvRect;
+layout (location=5) in float aTexId;
+
+layout (std140) uniform Camera
+{
+    mat4 uProjection;
+    mat4 uView;
+};
+
+out vec4 fColor;
+out vec2 fTexCoords;
+flat out int fTexId;
+
+void main()
+{
+    fColor = aColor;
+    fTexCoords = mix(aUvRect.xy, aUvRect.zw, aCorner);
+    fTexId = int(aTexId + 0.5);
+
+    gl_Position = uProjection * uView * vec4(aPos + aCorner * aScale, 0.0, 1.0);
+}
+
+#type fragment
+#version 330 core
+
+in vec4 fColor;
+in vec2 fTexCoords;
+flat in int fTexId;
+
+uniform sampler2D uTextures[9];
+uniform sampler2DArray uTextureArray;
+
+out vec4 color;
+
+void main()
+{
+    if (fTexId >= 16) {
+        color = fColor * texture(uTextureArray, vec3(fTexCoords, fTexId - 16));
+    } else if (fTexId > 0) {
+        color = fColor * texture(uTextures[fTexId], fTexCoords);
+    } else {
+        color = fColor;
+    }
+}
\ No newline at end of file
@@ -1,10 +1,18 @@
+import glengine.HeadlessSimulation;
 import glengine.Window;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 public class Main {
 	/**
-	 * It runs the window.
+	 * It runs the window, or the headless simulation when the first argument is "--headless".
 	 */
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("--headless")) {
+			HeadlessSimulation.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		Window window = Window.get();
 		window.run();
 	}
@@ -1,18 +1,21 @@
 package components;
 
 import glengine.Component;
+import glengine.Scene;
 import glengine.Transform;
 import org.joml.Vector2f;
 import org.joml.Vector4f;
+import renderer.SpriteBatch;
 import renderer.Texture;
 import imgui.ImGui;
 
-public class SpriteRenderer extends Component {
+public class SpriteRenderer extends Component implements Transform.Listener {
 
 	private Vector4f color = new Vector4f(1, 1, 1, 1);
 	private Sprite sprite = new Sprite();
 
-	private transient Transform lastTransform;
+	private transient Transform transform;
+	private transient SpriteBatch batch;
 	private transient boolean isDirty = false;
 
 	/*public SpriteRenderer(Vector4f color) {
@@ -28,23 +31,37 @@ public class SpriteRenderer extends Component {
 	}*/
 
 	/**
-	 * The start() function is called when the SpriteRenderer is started.
+	 * The start() function is called when the SpriteRenderer is started. From then on the sprite
+	 * is told about every change of the transform, so nothing is checked on update.
 	 */
 	@Override
 	public void start() {
-		this.lastTransform = gameObject.transform.copy();
+		this.transform = gameObject.transform;
+		this.transform.addListener(this);
 	}
 
 	/**
-	 * This function is called once per frame
+	 * Marks the sprite dirty when its transform moved or was resized
 	 *
-	 * @param dt The time in seconds since the last update.
+	 * @param transform The transform that changed.
 	 */
 	@Override
-	public void update(float dt) {
-		if (!this.lastTransform.equals(this.gameObject.transform)) {
-			this.gameObject.transform.copy(this.lastTransform);
-			isDirty = true;
+	public void transformChanged(Transform transform) {
+		markDirty();
+	}
+
+	/**
+	 * Stops drawing the sprite when it is removed from its game object or from the scene
+	 */
+	@Override
+	public void destroy() {
+		if (transform != null) {
+			transform.removeListener(this);
+			transform = null;
+		}
+		Scene scene = gameObject.getScene();
+		if (scene != null) {
+			scene.renderer().remove(this);
 		}
 	}
 
@@ -53,7 +70,7 @@ public class SpriteRenderer extends Component {
 		float[] imColor = {color.x, color.y, color.z, color.w};
 		if (ImGui.colorPicker4("Color Picker", imColor)) {
 			this.color.set(imColor[0], imColor[1], imColor[2], imColor[3]);
-			this.isDirty = true;
+			markDirty();
 		}
 	}
 
@@ -66,6 +83,15 @@ public class SpriteRenderer extends Component {
 		return this.color;
 	}
 
+	/**
+	 * Returns the sprite drawn by the entity
+	 *
+	 * @return The sprite.
+	 */
+	public Sprite getSprite() {
+		return this.sprite;
+	}
+
 	/**
 	 * Returns the texture of the sprite
 	 *
@@ -91,7 +117,7 @@ public class SpriteRenderer extends Component {
 	 */
 	public void setSprite(Sprite sprite) {
 		this.sprite = sprite;
-		this.isDirty = true;
+		markDirty();
 	}
 
 	/**
@@ -101,8 +127,8 @@ public class SpriteRenderer extends Component {
 	 */
 	public void setColor(Vector4f color) {
 		if (!this.color.equals(color)) {
-			this.isDirty = true;
 			this.color.set(color);
+			markDirty();
 		}
 	}
 
@@ -115,10 +141,34 @@ public class SpriteRenderer extends Component {
 		return this.isDirty;
 	}
 
+	/**
+	 * Marks the sprite as changed. The first time since it was last drawn, it is queued in the
+	 * dirty list of its batch, which is the only place the batch looks for changes.
+	 */
+	public void markDirty() {
+		if (this.isDirty) {
+			return;
+		}
+		this.isDirty = true;
+		if (this.batch != null) {
+			this.batch.queue(this);
+		}
+	}
+
 	/**
 	 * This function sets the isDirty field to false
 	 */
 	public void setClean() {
 		this.isDirty = false;
 	}
+
+	/**
+	 * Remembers the batch drawing the sprite, so changes can be queued there. It is called by the
+	 * batch when the sprite is added to it or removed from it.
+	 *
+	 * @param batch The batch of the sprite, or null.
+	 */
+	public void setBatch(SpriteBatch batch) {
+		this.batch = batch;
+	}
 }
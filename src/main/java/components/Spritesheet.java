@@ -2,8 +2,10 @@ package components;
 
 import org.joml.Vector2f;
 import renderer.Texture;
+import renderer.TextureAtlas;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class Spritesheet {
@@ -42,6 +44,15 @@ public class Spritesheet {
 		}
 	}
 
+	/**
+	 * Returns the texture the sprites of the sheet are cut from
+	 *
+	 * @return The texture of the sheet.
+	 */
+	public Texture getTexture() {
+		return this.texture;
+	}
+
 	/**
 	 * Returns the sprite at the given index
 	 *
@@ -51,4 +62,18 @@ public class Spritesheet {
 	public Sprite getSprite(int index) {
 		return this.sprites.get(index);
 	}
+
+	/**
+	 * Makes every sprite of the sheet point to its region of the atlas instead of the sheet texture
+	 *
+	 * @param atlas    The atlas the sheet texture was packed in.
+	 * @param remapped The collection the sprites moved onto the atlas are added to.
+	 */
+	public void useAtlas(TextureAtlas atlas, Collection<Sprite> remapped) {
+		for (Sprite sprite : this.sprites) {
+			if (atlas.remap(sprite)) {
+				remapped.add(sprite);
+			}
+		}
+	}
 }
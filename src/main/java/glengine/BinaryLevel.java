@@ -0,0 +1,73 @@
+package glengine;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The constants of the binary level format shared by {@link BinaryLevelWriter} and
+ * {@link BinaryLevelReader}.
+ * <p>
+ * A file starts with {@link #MAGIC} and {@link #VERSION}, then holds one record per game object
+ * and ends with {@link #END}. Strings and class schemas are not stored in a separate table:
+ * each one is defined inline the first time it is referenced and then referred to by its index,
+ * so the file can be written and read in a single pass. A schema lists the names of the fields
+ * of a class, which lets the reader skip fields that were removed from the class since the level
+ * was saved and leave new fields at their default value.
+ */
+final class BinaryLevel {
+	static final int MAGIC = 0x4D4C564C;
+	static final int VERSION = 1;
+
+	static final byte END = 0;
+	static final byte GAME_OBJECT = 1;
+
+	static final byte NULL = 0;
+	static final byte BOOLEAN = 1;
+	static final byte INT = 2;
+	static final byte LONG = 3;
+	static final byte FLOAT = 4;
+	static final byte DOUBLE = 5;
+	static final byte STRING = 6;
+	static final byte ENUM = 7;
+	static final byte ARRAY = 8;
+	static final byte TEXTURE = 9;
+	static final byte OBJECT = 10;
+
+	private static final Map<Class<?>, Field[]> fields = new HashMap<>();
+
+	private BinaryLevel() {
+
+	}
+
+	/**
+	 * Returns the fields of a class that are saved, the same ones Gson would save: every field of
+	 * the class and its superclasses that is neither static nor transient
+	 *
+	 * @param type The class of the object.
+	 * @return The fields, made accessible.
+	 */
+	static synchronized Field[] fields(Class<?> type) {
+		Field[] cached = fields.get(type);
+		if (cached != null) {
+			return cached;
+		}
+
+		List<Field> saved = new ArrayList<>();
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+					field.setAccessible(true);
+					saved.add(field);
+				}
+			}
+		}
+		cached = saved.toArray(new Field[0]);
+		fields.put(type, cached);
+		return cached;
+	}
+}
@@ -0,0 +1,470 @@
+package glengine;
+
+import components.Sprite;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import renderer.Texture;
+import renderer.TextureAtlas;
+import util.AssetPool;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the game objects of a binary level file one at a time. The compact file is read into a
+ * heap buffer in one go and each object is built as soon as its record is parsed. The file isn't
+ * memory-mapped: a mapping outlives the reader until it is garbage collected, and on Windows a
+ * mapped file can't be replaced by the next save. Only the classes a level can hold are created:
+ * components, transforms, sprites and JOML vectors, plus enums, strings and boxed primitives as
+ * field values; any other class named in the file is rejected as corruption.
+ */
+public class BinaryLevelReader implements LevelReader {
+	private static final Set<Class<?>> OBJECT_TYPES = new HashSet<>(Arrays.asList(
+			Transform.class, Sprite.class, Vector2f.class, Vector3f.class, Vector4f.class));
+	private static final Set<Class<?>> VALUE_TYPES = new HashSet<>(Arrays.asList(
+			String.class, Boolean.class, Integer.class, Long.class, Float.class, Double.class,
+			Short.class, Byte.class, Character.class, Texture.class, Object.class));
+
+	private final Path path;
+	private final ByteBuffer buffer;
+	private final List<String> strings = new ArrayList<>();
+	private final List<Schema> schemas = new ArrayList<>();
+	private boolean finished;
+
+	/**
+	 * Reads the file and checks its header
+	 *
+	 * @param path The path of the level file.
+	 * @throws IOException If the file can't be read or isn't a level of a known version.
+	 */
+	public BinaryLevelReader(Path path) throws IOException {
+		this.path = path;
+		this.buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		if (buffer.remaining() < 6 || buffer.getInt() != BinaryLevel.MAGIC) {
+			throw new IOException("'" + path + "' is not a binary level.");
+		}
+		int version = buffer.getShort();
+		if (version > BinaryLevel.VERSION) {
+			throw new IOException("'" + path + "' has version " + version + ", newer than " + BinaryLevel.VERSION + ".");
+		}
+	}
+
+	/**
+	 * Reads the next game object of the level. A truncated or damaged file is reported as an
+	 * IOException, never as one of the runtime exceptions of the buffer or of reflection.
+	 *
+	 * @return The game object with its components, or null at the end of the level.
+	 * @throws IOException If the file is corrupted or refers to a class that can't be created.
+	 */
+	@Override
+	public GameObject next() throws IOException {
+		if (finished) {
+			return null;
+		}
+
+		try {
+			return readGameObject();
+		} catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+				| ClassCastException | NegativeArraySizeException e) {
+			finished = true;
+			throw new IOException("'" + path + "' is corrupt near offset " + buffer.position() + ".", e);
+		}
+	}
+
+	private GameObject readGameObject() throws IOException {
+		byte record = buffer.get();
+		if (record == BinaryLevel.END) {
+			finished = true;
+			return null;
+		} else if (record != BinaryLevel.GAME_OBJECT) {
+			throw new IOException("Unknown record " + record + " at offset " + (buffer.position() - 1) + ".");
+		}
+
+		String name = readString();
+		int zIndex = buffer.getInt();
+		boolean isStatic = buffer.get() != 0;
+		Transform transform = (Transform) readValue();
+		if (transform == null) {
+			throw new IOException("Game object '" + name + "' has no transform.");
+		}
+		GameObject go = new GameObject(name, transform, zIndex);
+		go.setStatic(isStatic);
+
+		int components = readVarInt();
+		for (int i = 0; i < components; i++) {
+			Component component = (Component) readValue();
+			if (component != null) {
+				go.addComponent(component);
+			}
+		}
+		return go;
+	}
+
+	/**
+	 * Reads every remaining game object of the level
+	 *
+	 * @return The game objects, in the order they were written.
+	 * @throws IOException If the file is corrupted.
+	 */
+	public List<GameObject> readAll() throws IOException {
+		List<GameObject> objects = new ArrayList<>();
+		GameObject go;
+		while ((go = next()) != null) {
+			objects.add(go);
+		}
+		return objects;
+	}
+
+	@Override
+	public void close() {
+
+	}
+
+	/**
+	 * Reads a value preceded by its type tag
+	 *
+	 * @return The value, boxed for primitives.
+	 * @throws IOException If the file is corrupted.
+	 */
+	private Object readValue() throws IOException {
+		byte tag = buffer.get();
+		switch (tag) {
+			case BinaryLevel.NULL:
+				return null;
+			case BinaryLevel.BOOLEAN:
+				return buffer.get() != 0;
+			case BinaryLevel.INT:
+				return buffer.getInt();
+			case BinaryLevel.LONG:
+				return buffer.getLong();
+			case BinaryLevel.FLOAT:
+				return buffer.getFloat();
+			case BinaryLevel.DOUBLE:
+				return buffer.getDouble();
+			case BinaryLevel.STRING:
+				return readString();
+			case BinaryLevel.ENUM:
+				return readEnum();
+			case BinaryLevel.ARRAY:
+				return readArray();
+			case BinaryLevel.TEXTURE:
+				String filepath = readString();
+				return filepath == null ? null : AssetPool.getTexture(filepath);
+			case BinaryLevel.OBJECT:
+				return readObject();
+			default:
+				throw new IOException("Unknown value tag " + tag + " at offset " + (buffer.position() - 1) + ".");
+		}
+	}
+
+	/**
+	 * Reads an enum constant. A constant or an enum that no longer exists reads as null, like a
+	 * removed field.
+	 *
+	 * @return The constant, or null.
+	 * @throws IOException If the file is corrupted.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Object readEnum() throws IOException {
+		Class<?> type = findClass(readString());
+		String name = readString();
+		if (type == null || !type.isEnum()) {
+			return null;
+		}
+		try {
+			return Enum.valueOf((Class<? extends Enum>) type, name);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads an array. The elements of an array whose element class no longer exists are read and
+	 * dropped, and the array reads as null.
+	 *
+	 * @return The array, or null.
+	 * @throws IOException If the file is corrupted.
+	 */
+	private Object readArray() throws IOException {
+		Class<?> componentType = findClass(readString());
+		if (componentType != null && !isValueType(componentType)) {
+			throw new IOException("Arrays of '" + componentType.getName() + "' can't be read from a level.");
+		}
+		int length = readVarInt();
+		Object array = componentType == null ? null : Array.newInstance(componentType, length);
+		for (int i = 0; i < length; i++) {
+			Object element = readValue();
+			if (array != null) {
+				element = coerce(element, componentType);
+				if (element != null) {
+					Array.set(array, i, element);
+				}
+			}
+		}
+		return array;
+	}
+
+	/**
+	 * Creates an object from its schema and sets each saved field that still exists in the class.
+	 * The values of an object whose class no longer exists are read and dropped, so a removed or
+	 * renamed component only loses itself, not the rest of the level. A sprite whose texture is
+	 * packed in the current atlas is remapped onto it, as it was when the level was saved.
+	 *
+	 * @return The object, or null if its class no longer exists.
+	 * @throws IOException If the class can't be created.
+	 */
+	private Object readObject() throws IOException {
+		Schema schema = readSchema();
+		if (schema.constructor == null) {
+			for (int i = 0; i < schema.fields.length; i++) {
+				readValue();
+			}
+			return null;
+		}
+
+		Object object;
+		try {
+			object = schema.constructor.newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("Could not create '" + schema.constructor.getName() + "'", e);
+		}
+
+		for (Field field : schema.fields) {
+			Object value = readValue();
+			if (field == null) {
+				continue;
+			}
+			value = coerce(value, field.getType());
+			if (value != null || !field.getType().isPrimitive()) {
+				try {
+					field.set(object, value);
+				} catch (IllegalAccessException e) {
+					throw new IOException("Could not set field '" + field.getName() + "'", e);
+				}
+			}
+		}
+
+		TextureAtlas atlas = AssetPool.getAtlas();
+		if (atlas != null && object instanceof Sprite) {
+			atlas.remap((Sprite) object);
+		}
+		return object;
+	}
+
+	/**
+	 * Reads a reference to a schema, reading its definition if it is its first use. The saved
+	 * field names are matched to the fields of the class as it is now. A class that no longer
+	 * exists gets a schema without constructor, whose objects are skipped. Schemas are defined in
+	 * order, so a new definition must take the next id.
+	 *
+	 * @return The schema.
+	 * @throws IOException If the id skips ahead, or the class isn't one a level can hold or has no
+	 *                     constructor without arguments.
+	 */
+	private Schema readSchema() throws IOException {
+		int id = readVarInt();
+		if (id < schemas.size()) {
+			return schemas.get(id);
+		} else if (id != schemas.size()) {
+			throw new IOException("Schema " + id + " is defined before schema " + schemas.size() + ".");
+		}
+
+		Class<?> type = findClass(readString());
+		if (type != null && !isObjectType(type)) {
+			throw new IOException("'" + type.getName() + "' can't be read from a level.");
+		}
+		Map<String, Field> current = new HashMap<>();
+		if (type != null) {
+			for (Field field : BinaryLevel.fields(type)) {
+				current.putIfAbsent(field.getName(), field);
+			}
+		}
+		Field[] fields = new Field[readVarInt()];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = current.get(readString());
+		}
+		if (type == null) {
+			Schema schema = new Schema(null, fields);
+			schemas.add(schema);
+			return schema;
+		}
+
+		try {
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			Schema schema = new Schema(constructor, fields);
+			schemas.add(schema);
+			return schema;
+		} catch (NoSuchMethodException e) {
+			throw new IOException("'" + type.getName() + "' has no constructor without arguments.", e);
+		}
+	}
+
+	/**
+	 * Reads a reference to a string, reading its bytes if it is its first use. Strings are
+	 * defined in order, so a new definition must take the next reference.
+	 *
+	 * @return The string, or null.
+	 * @throws IOException If the reference skips ahead.
+	 */
+	private String readString() throws IOException {
+		int ref = readVarInt();
+		if (ref == 0) {
+			return null;
+		}
+		if (ref <= strings.size()) {
+			return strings.get(ref - 1);
+		} else if (ref != strings.size() + 1) {
+			throw new IOException("String " + ref + " is defined before string " + (strings.size() + 1) + ".");
+		}
+
+		int length = readVarInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		String value = new String(bytes, StandardCharsets.UTF_8);
+		strings.add(value);
+		return value;
+	}
+
+	private int readVarInt() {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Returns the class of the given name. The class is looked up without being initialized, so
+	 * reading a name runs no code of the class before it is known to be allowed.
+	 *
+	 * @param name The name of a class or of a primitive type.
+	 * @return The class, or null if no class has that name anymore.
+	 * @throws IOException If the name is missing.
+	 */
+	private static Class<?> findClass(String name) throws IOException {
+		if (name == null) {
+			throw new IOException("Missing class name.");
+		}
+		switch (name) {
+			case "boolean":
+				return boolean.class;
+			case "int":
+				return int.class;
+			case "long":
+				return long.class;
+			case "float":
+				return float.class;
+			case "double":
+				return double.class;
+			case "short":
+				return short.class;
+			case "byte":
+				return byte.class;
+			case "char":
+				return char.class;
+			default:
+				try {
+					return Class.forName(name, false, BinaryLevelReader.class.getClassLoader());
+				} catch (ClassNotFoundException e) {
+					return null;
+				}
+		}
+	}
+
+	/**
+	 * Returns true if objects of the class can be created from a schema: components, transforms,
+	 * sprites and JOML vectors
+	 *
+	 * @param type The class named by a schema.
+	 * @return A boolean value.
+	 */
+	private static boolean isObjectType(Class<?> type) {
+		return OBJECT_TYPES.contains(type) || Component.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * Returns true if the class can be the element type of an array read from the file
+	 *
+	 * @param type The element type named by an array.
+	 * @return A boolean value.
+	 */
+	private static boolean isValueType(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		return type.isPrimitive() || type.isEnum() || VALUE_TYPES.contains(type) || isObjectType(type);
+	}
+
+	/**
+	 * Converts a value read from the file to the type of the field it goes into, so that a field
+	 * whose numeric type changed still loads
+	 *
+	 * @param value The value read.
+	 * @param type  The type of the field.
+	 * @return The converted value, or null if it doesn't fit the field.
+	 */
+	private static Object coerce(Object value, Class<?> type) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof Number) {
+			Number number = (Number) value;
+			if (type == int.class || type == Integer.class) {
+				return number.intValue();
+			} else if (type == float.class || type == Float.class) {
+				return number.floatValue();
+			} else if (type == long.class || type == Long.class) {
+				return number.longValue();
+			} else if (type == double.class || type == Double.class) {
+				return number.doubleValue();
+			} else if (type == short.class || type == Short.class) {
+				return number.shortValue();
+			} else if (type == byte.class || type == Byte.class) {
+				return number.byteValue();
+			} else if (type == char.class || type == Character.class) {
+				return (char) number.intValue();
+			}
+		}
+		if (type == boolean.class) {
+			return value instanceof Boolean ? value : null;
+		}
+		return type.isInstance(value) ? value : null;
+	}
+
+	/**
+	 * The constructor of a saved class, or null if the class no longer exists, and, for each saved
+	 * field, the field it is read into, or null if the class no longer has it
+	 */
+	private static class Schema {
+		private final Constructor<?> constructor;
+		private final Field[] fields;
+
+		private Schema(Constructor<?> constructor, Field[] fields) {
+			this.constructor = constructor;
+			this.fields = fields;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package glengine;
+
+import components.Sprite;
+import renderer.Texture;
+import renderer.TextureAtlas;
+import util.AssetPool;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes game objects to a binary level file one at a time, without holding the level in memory.
+ * The components are saved by reflection, field by field, like Gson does for the JSON levels;
+ * textures are saved by file path and loaded through the asset pool when the level is read.
+ * Sprites moved onto the texture atlas are saved with their own texture and texture coordinates,
+ * since the atlas pages only exist at runtime.
+ */
+public class BinaryLevelWriter implements Closeable {
+	private final DataOutputStream out;
+	private final Map<String, Integer> strings = new HashMap<>();
+	private final Map<Class<?>, Integer> schemas = new HashMap<>();
+
+	/**
+	 * Creates the file and writes its header
+	 *
+	 * @param path The path of the level file.
+	 * @throws IOException If the file can't be written.
+	 */
+	public BinaryLevelWriter(Path path) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+		out.writeInt(BinaryLevel.MAGIC);
+		out.writeShort(BinaryLevel.VERSION);
+	}
+
+	/**
+	 * Appends a game object and all its components to the level
+	 *
+	 * @param go The game object to save.
+	 * @throws IOException If the file can't be written.
+	 */
+	public void write(GameObject go) throws IOException {
+		out.writeByte(BinaryLevel.GAME_OBJECT);
+		writeString(go.getName());
+		out.writeInt(go.zIndex());
+		out.writeBoolean(go.isStatic());
+		writeValue(go.transform);
+
+		List<Component> components = go.getAllComponents();
+		writeVarInt(components.size());
+		for (Component component : components) {
+			writeValue(component);
+		}
+	}
+
+	/**
+	 * Writes the end marker and closes the file
+	 *
+	 * @throws IOException If the file can't be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		out.writeByte(BinaryLevel.END);
+		out.close();
+	}
+
+	/**
+	 * Writes a value preceded by its type tag
+	 *
+	 * @param value The value to write, may be null.
+	 * @throws IOException If the file can't be written.
+	 */
+	private void writeValue(Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(BinaryLevel.NULL);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BinaryLevel.BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			out.writeByte(BinaryLevel.INT);
+			out.writeInt(((Number) value).intValue());
+		} else if (value instanceof Character) {
+			out.writeByte(BinaryLevel.INT);
+			out.writeInt((Character) value);
+		} else if (value instanceof Long) {
+			out.writeByte(BinaryLevel.LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Float) {
+			out.writeByte(BinaryLevel.FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Double) {
+			out.writeByte(BinaryLevel.DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof String) {
+			out.writeByte(BinaryLevel.STRING);
+			writeString((String) value);
+		} else if (value instanceof Enum) {
+			out.writeByte(BinaryLevel.ENUM);
+			writeString(((Enum<?>) value).getDeclaringClass().getName());
+			writeString(((Enum<?>) value).name());
+		} else if (value.getClass().isArray()) {
+			out.writeByte(BinaryLevel.ARRAY);
+			writeString(value.getClass().getComponentType().getName());
+			int length = Array.getLength(value);
+			writeVarInt(length);
+			for (int i = 0; i < length; i++) {
+				writeValue(Array.get(value, i));
+			}
+		} else if (value instanceof Texture) {
+			out.writeByte(BinaryLevel.TEXTURE);
+			writeString(((Texture) value).getFilepath());
+		} else {
+			TextureAtlas atlas = AssetPool.getAtlas();
+			if (atlas != null && value instanceof Sprite) {
+				value = atlas.original((Sprite) value);
+			}
+			out.writeByte(BinaryLevel.OBJECT);
+			Field[] fields = writeSchema(value.getClass());
+			for (Field field : fields) {
+				try {
+					writeValue(field.get(value));
+				} catch (IllegalAccessException e) {
+					throw new IOException("Could not read field '" + field.getName() + "'", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a reference to the schema of a class, defining the schema if it is its first use
+	 *
+	 * @param type The class of the object being written.
+	 * @return The fields of the class, in the order of the schema.
+	 * @throws IOException If the file can't be written.
+	 */
+	private Field[] writeSchema(Class<?> type) throws IOException {
+		Field[] fields = BinaryLevel.fields(type);
+		Integer id = schemas.get(type);
+		if (id != null) {
+			writeVarInt(id);
+			return fields;
+		}
+
+		id = schemas.size();
+		schemas.put(type, id);
+		writeVarInt(id);
+		writeString(type.getName());
+		writeVarInt(fields.length);
+		for (Field field : fields) {
+			writeString(field.getName());
+		}
+		return fields;
+	}
+
+	/**
+	 * Writes a reference to a string: 0 for null, otherwise its index plus one. A string seen for
+	 * the first time gets the next index and its UTF-8 bytes follow the reference.
+	 *
+	 * @param value The string to write, may be null.
+	 * @throws IOException If the file can't be written.
+	 */
+	private void writeString(String value) throws IOException {
+		if (value == null) {
+			writeVarInt(0);
+			return;
+		}
+
+		Integer id = strings.get(value);
+		if (id != null) {
+			writeVarInt(id + 1);
+			return;
+		}
+
+		id = strings.size();
+		strings.put(value, id);
+		writeVarInt(id + 1);
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Writes a non-negative int on as few bytes as possible, seven bits per byte
+	 *
+	 * @param value The value to write.
+	 * @throws IOException If the file can't be written.
+	 */
+	private void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+}
@@ -2,16 +2,45 @@ package glengine;
 
 import org.joml.Matrix4f;
 import org.joml.Vector2f;
-import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.BufferUtils;
+import renderer.GLState;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
 
 public class Camera {
+	static final float PROJECTION_WIDTH = 32.0f * 40.0f;
+	static final float PROJECTION_HEIGHT = 32.0f * 21.0f;
+	/**
+	 * The name of the std140 uniform block holding the camera matrices in the shaders
+	 */
+	public static final String UNIFORM_BLOCK = "Camera";
+	/**
+	 * The uniform buffer binding point the camera block is read from
+	 */
+	public static final int UNIFORM_BINDING = 0;
+	private static final int UNIFORM_BYTES = 2 * 16 * Float.BYTES;
+
 	private final Matrix4f projectionMatrix, viewMatrix;
+	private final Matrix4f viewProjectionMatrix, inverseViewProjection;
 	public Vector2f position;
+	private final Vector2f viewPosition = new Vector2f();
+	private boolean matricesDirty = true;
+	private final Vector2f uploadedPosition = new Vector2f();
+	private final FloatBuffer uniformData = BufferUtils.createFloatBuffer(2 * 16);
+	private boolean uniformsDirty = true;
+	private int uboID;
+	private float projectionWidth = PROJECTION_WIDTH, projectionHeight = PROJECTION_HEIGHT;
 
 	public Camera(Vector2f position) {
 		this.position = position;
 		this.projectionMatrix = new Matrix4f();
 		this.viewMatrix = new Matrix4f();
+		this.viewProjectionMatrix = new Matrix4f();
+		this.inverseViewProjection = new Matrix4f();
 		adjustProjection();
 	}
 
@@ -29,24 +58,68 @@ public class Camera {
 	 */
 	public void adjustProjection() {
 		projectionMatrix.identity();
-		projectionMatrix.ortho(0.0f, 32.0f * 40.0f, 0.0f, 32.0f * 21.0f, 0.0f, 100.0f);
+		projectionMatrix.ortho(0.0f, projectionWidth, 0.0f, projectionHeight, 0.0f, 100.0f);
+		uniformsDirty = true;
+		matricesDirty = true;
+	}
+
+	/**
+	 * Changes the size of the world area seen by the camera and rebuilds the projection
+	 *
+	 * @param width  The width of the view in world units.
+	 * @param height The height of the view in world units.
+	 */
+	public void setProjectionSize(float width, float height) {
+		this.projectionWidth = width;
+		this.projectionHeight = height;
+		adjustProjection();
+	}
+
+	/**
+	 * Writes the projection and view matrices into the camera uniform buffer, shared by every
+	 * shader through the {@link #UNIFORM_BLOCK} block. It is called once per frame, before the
+	 * first draw, and only uploads when the camera moved or its projection changed.
+	 */
+	public void updateUniformBuffer() {
+		if (uboID == 0) {
+			uboID = glGenBuffers();
+			GLState.bindBuffer(GL_UNIFORM_BUFFER, uboID);
+			glBufferData(GL_UNIFORM_BUFFER, UNIFORM_BYTES, GL_DYNAMIC_DRAW);
+		} else if (!uniformsDirty && uploadedPosition.equals(position)) {
+			GLState.bindUniformBufferBase(UNIFORM_BINDING, uboID);
+			return;
+		}
+
+		projectionMatrix.get(0, uniformData);
+		getViewMatrix().get(16, uniformData);
+		GLState.bindBuffer(GL_UNIFORM_BUFFER, uboID);
+		glBufferSubData(GL_UNIFORM_BUFFER, 0, uniformData);
+		GLState.bindUniformBufferBase(UNIFORM_BINDING, uboID);
+
+		uploadedPosition.set(position);
+		uniformsDirty = false;
+	}
+
+	/**
+	 * Deletes the camera uniform buffer. It is created again if the camera is used afterwards.
+	 */
+	public void destroy() {
+		if (uboID != 0) {
+			GLState.deleteBuffer(uboID);
+			uboID = 0;
+			uniformsDirty = true;
+		}
 	}
 
 
 	/**
 	 * This function returns a view matrix that is used to transform the world into the camera's
-	 * view
+	 * view. The matrix is cached and only rebuilt when the position changed.
 	 *
-	 * @return The view matrix.
+	 * @return The view matrix, owned by the camera.
 	 */
 	public Matrix4f getViewMatrix() {
-		Vector3f cameraFront = new Vector3f(0.0f, 0.0f, -1.0f);
-		Vector3f cameraUp = new Vector3f(0.0f, 1.0f, 0.0f);
-		this.viewMatrix.identity();
-		viewMatrix.lookAt(new Vector3f(position.x, position.y, 20.0f),
-				cameraFront.add(position.x, position.y, 0.0f),
-				cameraUp);
-
+		updateMatrices();
 		return this.viewMatrix;
 	}
 
@@ -54,4 +127,58 @@ public class Camera {
 	public Matrix4f getProjectionMatrix() {
 		return this.projectionMatrix;
 	}
+
+	/**
+	 * Returns the projection matrix multiplied by the view matrix, which takes a world position
+	 * straight to clip space
+	 *
+	 * @return The view-projection matrix, owned by the camera.
+	 */
+	public Matrix4f getViewProjectionMatrix() {
+		updateMatrices();
+		return this.viewProjectionMatrix;
+	}
+
+	/**
+	 * Returns the inverse of the view-projection matrix, which takes a point in normalized device
+	 * coordinates back to the world, for example to pick what is under the mouse
+	 *
+	 * @return The inverse view-projection matrix, owned by the camera.
+	 */
+	public Matrix4f getInverseViewProjection() {
+		updateMatrices();
+		return this.inverseViewProjection;
+	}
+
+	/**
+	 * Rebuilds the view matrix and the matrices derived from it if the position moved or the
+	 * projection changed since they were last computed. The camera looks down the negative z axis
+	 * from 20 units in front of its position.
+	 */
+	private void updateMatrices() {
+		if (!matricesDirty && viewPosition.equals(position)) {
+			return;
+		}
+
+		viewMatrix.setLookAt(position.x, position.y, 20.0f,
+				position.x, position.y, -1.0f,
+				0.0f, 1.0f, 0.0f);
+		projectionMatrix.mul(viewMatrix, viewProjectionMatrix);
+		viewProjectionMatrix.invert(inverseViewProjection);
+
+		viewPosition.set(position);
+		matricesDirty = false;
+	}
+
+	/**
+	 * Writes the world space rectangle seen by the camera into the given vector, as (minX, minY,
+	 * maxX, maxY). The projection has its origin in the bottom left corner, so the rectangle
+	 * starts at the camera position and has the size of the projection.
+	 *
+	 * @param dest The vector that receives the bounds.
+	 * @return The dest vector.
+	 */
+	public Vector4f getViewBounds(Vector4f dest) {
+		return dest.set(position.x, position.y, position.x + projectionWidth, position.y + projectionHeight);
+	}
 }
@@ -23,4 +23,12 @@ public abstract class Component {
 	public void imgui() {
 
 	}
+
+	/**
+	 * This function is called when the component is removed from its game object, or when the game
+	 * object is removed from the scene
+	 */
+	public void destroy() {
+
+	}
 }
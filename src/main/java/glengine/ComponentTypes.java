@@ -0,0 +1,61 @@
+package glengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives every component class a small, dense id the first time it is seen, so game objects can
+ * index their components by type in an array. The ids are cached per class with a
+ * {@link ClassValue}, which makes a lookup a constant-time read without allocation.
+ */
+final class ComponentTypes {
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	private static final ClassValue<Integer> ids = new ClassValue<Integer>() {
+		@Override
+		protected Integer computeValue(Class<?> type) {
+			return nextId.getAndIncrement();
+		}
+	};
+
+	private static final ClassValue<int[]> hierarchies = new ClassValue<int[]>() {
+		@Override
+		protected int[] computeValue(Class<?> type) {
+			List<Integer> found = new ArrayList<>();
+			for (Class<?> c = type; c != null && Component.class.isAssignableFrom(c); c = c.getSuperclass()) {
+				found.add(id(c));
+			}
+			int[] result = new int[found.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = found.get(i);
+			}
+			return result;
+		}
+	};
+
+	private ComponentTypes() {
+
+	}
+
+	/**
+	 * Returns the id of a component class
+	 *
+	 * @param type The class, or one of its superclasses down to {@link Component}.
+	 * @return The id of the class.
+	 */
+	static int id(Class<?> type) {
+		return ids.get(type);
+	}
+
+	/**
+	 * Returns the ids a component of the given class can be looked up by: its own class and every
+	 * superclass down to {@link Component}
+	 *
+	 * @param type The concrete class of the component.
+	 * @return The ids, the class's own first.
+	 */
+	static int[] hierarchy(Class<?> type) {
+		return hierarchies.get(type);
+	}
+}
@@ -0,0 +1,120 @@
+package glengine;
+
+/**
+ * Turns the variable time between frames into a whole number of fixed simulation steps. The time
+ * left over is kept for the next frame and exposed as an interpolation factor, so rendering can
+ * blend between the last two simulated states.
+ * <p>
+ * When the simulation can't keep up, the accumulated time would grow every frame and each frame
+ * would run even more steps. To stop that spiral, a frame never counts for more than
+ * {@link #setMaxFrameTime(float) a maximum time} and never runs more than
+ * {@link #setMaxSteps(int) a maximum number of steps}; the time beyond that is dropped and the
+ * simulation runs slower than real time instead.
+ */
+public class FixedTimestep {
+	private float step;
+	private float maxFrameTime = 0.25f;
+	private int maxSteps = 8;
+	private float accumulator;
+	private float droppedTime;
+
+	/**
+	 * Creates a timestep of 60 steps per second
+	 */
+	public FixedTimestep() {
+		this(1.0f / 60.0f);
+	}
+
+	/**
+	 * Creates a timestep of the given duration
+	 *
+	 * @param step The duration of one simulation step in seconds.
+	 */
+	public FixedTimestep(float step) {
+		setStep(step);
+	}
+
+	/**
+	 * Adds the time of a frame to the accumulator and takes as many whole steps out of it as fit
+	 *
+	 * @param frameTime The time in seconds since the last frame.
+	 * @return The number of steps the simulation has to run this frame.
+	 */
+	public int advance(float frameTime) {
+		if (frameTime > maxFrameTime) {
+			droppedTime += frameTime - maxFrameTime;
+			frameTime = maxFrameTime;
+		}
+		accumulator += Math.max(frameTime, 0.0f);
+
+		int steps = (int) (accumulator / step);
+		if (steps > maxSteps) {
+			droppedTime += (steps - maxSteps) * step;
+			steps = maxSteps;
+		}
+		accumulator -= steps * step;
+		if (accumulator >= step) {
+			droppedTime += accumulator - accumulator % step;
+			accumulator %= step;
+		}
+		return steps;
+	}
+
+	/**
+	 * Returns how far the current time is between the last simulated state and the next one
+	 *
+	 * @return A value in [0, 1), to interpolate the rendered state with.
+	 */
+	public float alpha() {
+		return accumulator / step;
+	}
+
+	/**
+	 * Returns the duration of one simulation step
+	 *
+	 * @return The step in seconds.
+	 */
+	public float step() {
+		return this.step;
+	}
+
+	/**
+	 * Sets the duration of one simulation step
+	 *
+	 * @param step The step in seconds.
+	 */
+	public void setStep(float step) {
+		if (step <= 0) {
+			throw new IllegalArgumentException("The step must be positive, got " + step + ".");
+		}
+		this.step = step;
+	}
+
+	/**
+	 * Sets the longest time a single frame can add to the accumulator, for example after a hitch
+	 * or while the window was being dragged
+	 *
+	 * @param maxFrameTime The maximum frame time in seconds, 0.25 by default.
+	 */
+	public void setMaxFrameTime(float maxFrameTime) {
+		this.maxFrameTime = maxFrameTime;
+	}
+
+	/**
+	 * Sets the largest number of steps run in a single frame
+	 *
+	 * @param maxSteps The maximum number of steps, 8 by default.
+	 */
+	public void setMaxSteps(int maxSteps) {
+		this.maxSteps = Math.max(maxSteps, 1);
+	}
+
+	/**
+	 * Returns the time that was dropped to keep the simulation from spiralling
+	 *
+	 * @return The dropped time in seconds since the creation of the timestep.
+	 */
+	public float droppedTime() {
+		return this.droppedTime;
+	}
+}
@@ -1,14 +1,19 @@
 package glengine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class GameObject {
 
 	private final String name;
 	private final List<Component> components;
+	private transient Component[] componentIndex = new Component[0];
 	public Transform transform;
-	private final int zIndex;
+	private int zIndex;
+	private boolean isStatic;
+	private transient Scene scene;
 
 	public GameObject(String name) {
 		this.name = name;
@@ -24,34 +29,87 @@ public class GameObject {
 		this.transform = transform;
 	}
 
+	/**
+	 * Returns the first component added to the game object that is an instance of the given class.
+	 * The components are indexed by the id of their class and of each of their superclasses, so
+	 * the lookup takes constant time and allocates nothing.
+	 *
+	 * @param componentClass The class of the component, or one of its superclasses.
+	 * @return The component, or null if the game object has none of that class.
+	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Component> T getComponent(Class<T> componentClass) {
-		for (Component c : components) {
-			if (componentClass.isAssignableFrom(c.getClass())) {
-				try {
-					return componentClass.cast(c);
-				} catch (ClassCastException e) {
-					e.printStackTrace();
-					assert false : "Error: Casting component.";
-				}
-			}
-		}
-
-		return null;
+		int id = ComponentTypes.id(componentClass);
+		return id < componentIndex.length ? (T) componentIndex[id] : null;
 	}
 
+	/**
+	 * Removes the first component that is an instance of the given class and destroys it
+	 *
+	 * @param componentClass The class of the component, or one of its superclasses.
+	 */
 	public <T extends Component> void removeComponent(Class<T> componentClass) {
-		for (int i = 0; i < components.size(); i++) {
-			Component c = components.get(i);
-			if (componentClass.isAssignableFrom(c.getClass())) {
-				components.remove(i);
-				return;
-			}
+		Component c = getComponent(componentClass);
+		if (c == null) {
+			return;
 		}
+
+		components.remove(c);
+		c.destroy();
+		unindex(c);
 	}
 
 	public void addComponent(Component c) {
 		this.components.add(c);
 		c.gameObject = this;
+		index(c);
+	}
+
+	/**
+	 * Makes the component the one returned for its class and each of its superclasses, unless an
+	 * earlier component already is
+	 *
+	 * @param c The component that was added.
+	 */
+	private void index(Component c) {
+		for (int id : ComponentTypes.hierarchy(c.getClass())) {
+			if (id >= componentIndex.length) {
+				componentIndex = Arrays.copyOf(componentIndex, id + 1);
+			}
+			if (componentIndex[id] == null) {
+				componentIndex[id] = c;
+			}
+		}
+	}
+
+	/**
+	 * Replaces a removed component in the index by the next component of the same class, if any
+	 *
+	 * @param removed The component that was removed.
+	 */
+	private void unindex(Component removed) {
+		for (int id : ComponentTypes.hierarchy(removed.getClass())) {
+			if (componentIndex[id] != removed) {
+				continue;
+			}
+			componentIndex[id] = null;
+			for (Component c : components) {
+				int[] hierarchy = ComponentTypes.hierarchy(c.getClass());
+				if (contains(hierarchy, id)) {
+					componentIndex[id] = c;
+					break;
+				}
+			}
+		}
+	}
+
+	private static boolean contains(int[] ids, int id) {
+		for (int i : ids) {
+			if (i == id) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	public void update(float dt) {
@@ -66,13 +124,100 @@ public class GameObject {
 		}
 	}
 
+	public void destroy() {
+		for (Component component : components) {
+			component.destroy();
+		}
+	}
+
 	public void imgui() {
 		for (Component c : components) {
 			c.imgui();
 		}
 	}
 
+	/**
+	 * Returns the name of the game object
+	 *
+	 * @return The name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the components of the game object, in the order they were added
+	 *
+	 * @return A read-only view of the components.
+	 */
+	public List<Component> getAllComponents() {
+		return Collections.unmodifiableList(this.components);
+	}
+
 	public int zIndex() {
 		return this.zIndex;
 	}
+
+	/**
+	 * Returns the scene the game object was added to
+	 *
+	 * @return The scene, or null if the game object isn't in a scene.
+	 */
+	public Scene getScene() {
+		return this.scene;
+	}
+
+	/**
+	 * Sets the scene the game object belongs to. It is called by the scene when the game object is
+	 * added to it or removed from it.
+	 *
+	 * @param scene The scene of the game object, or null.
+	 */
+	void setScene(Scene scene) {
+		this.scene = scene;
+	}
+
+	/**
+	 * Returns true if the game object is part of the static geometry of the level
+	 *
+	 * @return A boolean value.
+	 */
+	public boolean isStatic() {
+		return this.isStatic;
+	}
+
+	/**
+	 * Marks the game object as static geometry, such as a tile. Its sprite is grouped with the
+	 * sprites around it in a chunk that is only drawn while the camera is near. A static sprite
+	 * may still move, but it changes batch each time it crosses into another chunk.
+	 *
+	 * @param isStatic True if the game object doesn't move.
+	 */
+	public void setStatic(boolean isStatic) {
+		if (this.isStatic == isStatic) {
+			return;
+		}
+
+		this.isStatic = isStatic;
+		if (scene != null) {
+			scene.renderer().updateStatic(this);
+		}
+	}
+
+	/**
+	 * Changes the z-index of the game object. If it is drawn by its scene, its sprite is moved to
+	 * a batch of the new z-index right away.
+	 *
+	 * @param zIndex The new z-index.
+	 */
+	public void setZIndex(int zIndex) {
+		if (this.zIndex == zIndex) {
+			return;
+		}
+
+		this.zIndex = zIndex;
+		if (scene != null) {
+			scene.renderer().updateZIndex(this);
+		}
+	}
 }
@@ -14,6 +14,9 @@ public class GameObjectDeserializer implements JsonDeserializer<GameObject> {
 		int zIndex = context.deserialize(jsonObject.get("zIndex"), int.class);
 
 		GameObject go = new GameObject(name, transform, zIndex);
+		if (jsonObject.has("isStatic")) {
+			go.setStatic(jsonObject.get("isStatic").getAsBoolean());
+		}
 		for (JsonElement e : components) {
 			Component c = context.deserialize(e, Component.class);
 			go.addComponent(c);
@@ -0,0 +1,164 @@
+package glengine;
+
+import components.SpriteRenderer;
+import org.joml.Vector2f;
+import renderer.NullRenderer;
+import renderer.Renderer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * A scene that runs without a window. With a {@link NullRenderer} it is only simulated and never
+ * touches OpenGL; with a regular renderer it draws into an {@link OffscreenContext}. Its
+ * {@link #main(String[]) main} steps a level as fast as possible and prints the throughput, to
+ * measure the cost of the simulation on machines without a display, and can save the last frame
+ * to compare rendering against a reference image.
+ */
+public class HeadlessSimulation extends Scene {
+	private static final int DEFAULT_STEPS = 10000;
+
+	/**
+	 * Creates a scene that is only simulated
+	 */
+	public HeadlessSimulation() {
+		super(new NullRenderer());
+	}
+
+	/**
+	 * Creates a scene drawn by the given renderer, for an offscreen context
+	 *
+	 * @param renderer The renderer of the scene.
+	 * @param camera   The camera the scene is drawn from.
+	 */
+	public HeadlessSimulation(Renderer renderer, Camera camera) {
+		super(renderer);
+		this.camera = camera;
+	}
+
+	/**
+	 * Updates every game object of the scene
+	 *
+	 * @param dt The duration of the simulation step in seconds.
+	 */
+	@Override
+	public void update(float dt) {
+		for (GameObject go : this.gameObjects) {
+			go.update(dt);
+		}
+	}
+
+	/**
+	 * Adds every game object of a level to the scene
+	 *
+	 * @param reader The level to read.
+	 * @return The number of game objects added.
+	 * @throws IOException If the level can't be read.
+	 */
+	public int addAll(LevelReader reader) throws IOException {
+		int count = 0;
+		GameObject go;
+		while ((go = reader.next()) != null) {
+			addGameObjectToScene(go);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Adds a square grid of untextured sprites, standing in for a level
+	 *
+	 * @param count The number of game objects to add.
+	 */
+	public void addGrid(int count) {
+		int side = (int) Math.ceil(Math.sqrt(count));
+		for (int i = 0; i < count; i++) {
+			GameObject go = new GameObject("Object " + i, new Transform(
+					new Vector2f((i % side) * 32.0f, (i / side) * 32.0f), new Vector2f(32.0f, 32.0f)), 0);
+			go.addComponent(new SpriteRenderer());
+			addGameObjectToScene(go);
+		}
+	}
+
+	/**
+	 * Runs the simulation for a number of fixed steps and returns how long it took
+	 *
+	 * @param steps The number of steps to run.
+	 * @param step  The duration of a step in seconds.
+	 * @return The wall-clock time in nanoseconds.
+	 */
+	public long run(int steps, float step) {
+		long begin = System.nanoTime();
+		for (int i = 0; i < steps; i++) {
+			step(step);
+		}
+		return System.nanoTime() - begin;
+	}
+
+	/**
+	 * Simulates a level without a window. The arguments are, in order:
+	 * <ol>
+	 * <li>a level file, or the number of game objects of a generated level,</li>
+	 * <li>the number of steps to run,</li>
+	 * <li>optionally a PNG file: the level is then drawn offscreen after the last step and the
+	 * frame is saved there,</li>
+	 * <li>the context API of the offscreen drawing: native, egl or osmesa.</li>
+	 * </ol>
+	 * Binary levels resolve their textures through the asset pool, which needs a context, so they
+	 * can only be simulated when a frame is drawn.
+	 *
+	 * @param args The arguments of the run.
+	 */
+	public static void main(String[] args) throws IOException {
+		String level = args.length > 0 ? args[0] : Scene.LEVEL_JSON;
+		int steps = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STEPS;
+		Path frame = args.length > 2 ? Paths.get(args[2]) : null;
+		OffscreenContext.ContextApi api = args.length > 3
+				? OffscreenContext.ContextApi.valueOf(args[3].toUpperCase(Locale.ROOT))
+				: OffscreenContext.ContextApi.NATIVE;
+
+		if (frame == null) {
+			run(new HeadlessSimulation(), level, steps);
+			return;
+		}
+
+		try (OffscreenContext context = new OffscreenContext((int) Camera.PROJECTION_WIDTH,
+				(int) Camera.PROJECTION_HEIGHT, api)) {
+			HeadlessSimulation scene = new HeadlessSimulation(new Renderer(), new Camera(new Vector2f()));
+			run(scene, level, steps);
+			context.beginFrame(1, 1, 1, 1);
+			scene.render(1.0f);
+			context.saveFrame(frame);
+			System.out.println("Saved the last frame to '" + frame + "'.");
+		}
+	}
+
+	/**
+	 * Fills the scene with the level, starts it, runs the steps and prints the throughput
+	 *
+	 * @param scene The scene to run.
+	 * @param level A level file, or the number of game objects of a generated level.
+	 * @param steps The number of steps to run.
+	 * @throws IOException If the level can't be read.
+	 */
+	private static void run(HeadlessSimulation scene, String level, int steps) throws IOException {
+		FixedTimestep timestep = new FixedTimestep();
+		if (level.matches("\\d+")) {
+			scene.addGrid(Integer.parseInt(level));
+		} else {
+			Path path = Paths.get(level);
+			try (LevelReader reader = level.endsWith(".bin") ? new BinaryLevelReader(path) : new JsonLevelReader(path)) {
+				scene.addAll(reader);
+			}
+		}
+		scene.start();
+
+		long nanos = scene.run(steps, timestep.step());
+		double seconds = nanos / 1e9;
+		System.out.printf("%d game objects, %d steps in %.3f s: %.1f steps/s, %.3f ms/step, %.1f simulated seconds per second%n",
+				scene.gameObjects.size(), steps, seconds, steps / seconds, seconds * 1000.0 / steps,
+				steps * timestep.step() / seconds);
+	}
+}
@@ -0,0 +1,82 @@
+package glengine;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads the game objects of a JSON level one at a time. The array of the level is walked with a
+ * {@link JsonReader}, and only the element being read is turned into a tree for the
+ * {@link GameObjectDeserializer}, so the file is never held in memory as a whole.
+ */
+public class JsonLevelReader implements LevelReader {
+	private final Gson gson = new GsonBuilder()
+			.registerTypeAdapter(Component.class, new ComponentDeserializer())
+			.registerTypeAdapter(GameObject.class, new GameObjectDeserializer())
+			.create();
+	private final JsonReader reader;
+	private boolean started, finished;
+
+	/**
+	 * Opens the file for reading
+	 *
+	 * @param path The path of the level file.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public JsonLevelReader(Path path) throws IOException {
+		this.reader = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public GameObject next() throws IOException {
+		if (finished) {
+			return null;
+		}
+
+		try {
+			if (!started) {
+				started = true;
+				if (isEmpty()) {
+					finished = true;
+					return null;
+				}
+				reader.beginArray();
+			}
+			if (!reader.hasNext()) {
+				reader.endArray();
+				finished = true;
+				return null;
+			}
+			return gson.fromJson(reader, GameObject.class);
+		} catch (JsonParseException | IllegalStateException e) {
+			throw new IOException("Malformed level at " + reader.getPath() + ".", e);
+		}
+	}
+
+	/**
+	 * Tells whether the file has no content at all, which an interrupted save can leave behind
+	 *
+	 * @return true if there is nothing to read.
+	 * @throws IOException If the file can't be read.
+	 */
+	private boolean isEmpty() throws IOException {
+		try {
+			return reader.peek() == JsonToken.END_DOCUMENT;
+		} catch (EOFException e) {
+			return true;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,65 @@
+package glengine;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts the JSON levels saved by older versions into the binary level format
+ */
+public final class LevelConverter {
+
+	private LevelConverter() {
+
+	}
+
+	/**
+	 * Reads a JSON level and writes the same game objects as a binary level. Textures are only
+	 * kept by file path, so no GL context is needed.
+	 *
+	 * @param json   The path of the JSON level.
+	 * @param binary The path of the binary level to create.
+	 * @return The number of game objects converted.
+	 * @throws IOException If a file can't be read or written.
+	 */
+	public static int jsonToBinary(Path json, Path binary) throws IOException {
+		Gson gson = new GsonBuilder()
+				.registerTypeAdapter(Component.class, new ComponentDeserializer())
+				.registerTypeAdapter(GameObject.class, new GameObjectDeserializer())
+				.create();
+
+		GameObject[] objs;
+		try (Reader reader = Files.newBufferedReader(json, StandardCharsets.UTF_8)) {
+			objs = gson.fromJson(reader, GameObject[].class);
+		}
+		if (objs == null) {
+			objs = new GameObject[0];
+		}
+
+		try (BinaryLevelWriter writer = new BinaryLevelWriter(binary)) {
+			for (GameObject obj : objs) {
+				writer.write(obj);
+			}
+		}
+		return objs.length;
+	}
+
+	/**
+	 * Converts the JSON level given as first argument into the binary level given as second
+	 * argument, "Level.txt" and "Level.bin" by default
+	 *
+	 * @param args The paths of the JSON and binary levels.
+	 */
+	public static void main(String[] args) throws IOException {
+		Path json = Paths.get(args.length > 0 ? args[0] : Scene.LEVEL_JSON);
+		Path binary = Paths.get(args.length > 1 ? args[1] : Scene.LEVEL_BINARY);
+		int count = jsonToBinary(json, binary);
+		System.out.println("Converted " + count + " game objects from '" + json + "' to '" + binary + "'.");
+	}
+}
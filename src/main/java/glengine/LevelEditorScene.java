@@ -68,7 +68,7 @@ public class LevelEditorScene extends Scene {
 	/**
 	 * This function loops through all the game objects and calls their update function
 	 *
-	 * @param dt The time in seconds since the last update.
+	 * @param dt The duration of the simulation step in seconds.
 	 */
 	@Override
 	public void update(float dt) {
@@ -76,8 +76,6 @@ public class LevelEditorScene extends Scene {
 		for (GameObject go : this.gameObjects) {
 			go.update(dt);
 		}
-
-		this.renderer.render();
 	}
 
 	@Override
@@ -0,0 +1,18 @@
+package glengine;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of the game objects of a saved level, read one at a time so a level never has to be
+ * held in memory as a whole
+ */
+public interface LevelReader extends Closeable {
+	/**
+	 * Reads the next game object of the level
+	 *
+	 * @return The game object with its components, or null at the end of the level.
+	 * @throws IOException If the level can't be read.
+	 */
+	GameObject next() throws IOException;
+}
@@ -15,4 +15,14 @@ public class LevelScene extends Scene {
 	public void update(float dt) {
 
 	}
+
+	/**
+	 * The level scene has no camera and nothing to draw yet
+	 *
+	 * @param alpha The interpolation factor of the frame.
+	 */
+	@Override
+	public void render(float alpha) {
+
+	}
 }
@@ -0,0 +1,269 @@
+package glengine;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.egl.EGL;
+import org.lwjgl.egl.EGLCapabilities;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.Configuration;
+import org.lwjgl.system.MemoryStack;
+import renderer.Framebuffer;
+import renderer.GLState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+
+import static org.lwjgl.egl.EGL10.*;
+import static org.lwjgl.egl.EGL12.eglBindAPI;
+import static org.lwjgl.egl.EGL14.EGL_OPENGL_API;
+import static org.lwjgl.egl.EGL14.EGL_OPENGL_BIT;
+import static org.lwjgl.egl.EGL15.*;
+import static org.lwjgl.egl.EXTDeviceEnumeration.eglQueryDevicesEXT;
+import static org.lwjgl.egl.EXTPlatformBase.eglGetPlatformDisplayEXT;
+import static org.lwjgl.egl.EXTPlatformDevice.EGL_PLATFORM_DEVICE_EXT;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.stb.STBImageWrite.stbi_flip_vertically_on_write;
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * An OpenGL context without a visible window, drawing into a {@link Framebuffer} whose frames can
+ * be read back, so rendering can be regression-tested on build machines.
+ * <p>
+ * With {@link ContextApi#EGL EGL} the context is created directly through EGL, on the first GPU
+ * device or on the default display, without a window system: it works on a machine with no
+ * display server, as long as an EGL driver (Mesa or a GPU vendor's) is installed. The other APIs
+ * create the context from a hidden GLFW window, and GLFW needs a display server to initialize on
+ * Linux, so they have to run under Xvfb or a similar virtual display there.
+ */
+public class OffscreenContext implements Closeable {
+	/**
+	 * The library GLFW creates the context with
+	 */
+	public enum ContextApi {
+		/**
+		 * The context API of the platform: WGL, GLX or NSGL.
+		 */
+		NATIVE(GLFW_NATIVE_CONTEXT_API),
+
+		/**
+		 * EGL, used directly without GLFW, so that no display server is needed.
+		 */
+		EGL(GLFW_EGL_CONTEXT_API),
+
+		/**
+		 * Mesa's software rasterizer through GLFW, which needs no GPU but still a display.
+		 */
+		OSMESA(GLFW_OSMESA_CONTEXT_API);
+
+		private final int glfwValue;
+
+		ContextApi(int glfwValue) {
+			this.glfwValue = glfwValue;
+		}
+	}
+
+	private static final long EGL_DEFAULT_DISPLAY = 0L;
+
+	private long glfwWindow = NULL;
+	private long eglDisplay = EGL_NO_DISPLAY, eglContext = EGL_NO_CONTEXT, eglSurface = EGL_NO_SURFACE;
+	private final Framebuffer framebuffer;
+
+	/**
+	 * Creates the context, makes it current on the calling thread and creates the framebuffer the
+	 * frames are drawn into
+	 *
+	 * @param width  The width of the frames in pixels.
+	 * @param height The height of the frames in pixels.
+	 * @param api    The library the context is created with.
+	 */
+	public OffscreenContext(int width, int height, ContextApi api) {
+		if (api == ContextApi.EGL) {
+			createEglContext();
+		} else {
+			createGlfwContext(width, height, api);
+		}
+
+		GLState.invalidate();
+		glEnable(GL_BLEND);
+		glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+		framebuffer = new Framebuffer(width, height);
+	}
+
+	/**
+	 * Creates a hidden GLFW window and makes its context current
+	 *
+	 * @param width  The width of the window in pixels.
+	 * @param height The height of the window in pixels.
+	 * @param api    The library GLFW creates the context with.
+	 */
+	private void createGlfwContext(int width, int height, ContextApi api) {
+		GLFWErrorCallback.createPrint(System.err).set();
+		if (!glfwInit()) {
+			throw new IllegalStateException("Unable to initialize GLFW, is there a display?");
+		}
+
+		glfwDefaultWindowHints();
+		glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+		glfwWindowHint(GLFW_CONTEXT_CREATION_API, api.glfwValue);
+		glfwWindow = glfwCreateWindow(width, height, "Offscreen", NULL, NULL);
+		if (glfwWindow == NULL) {
+			glfwTerminate();
+			throw new IllegalStateException("Failed to create an offscreen " + api + " context.");
+		}
+
+		glfwMakeContextCurrent(glfwWindow);
+		GL.createCapabilities();
+	}
+
+	/**
+	 * Creates an OpenGL 3.3 core context through EGL and makes it current. The display is the
+	 * first device listed by EGL_EXT_device_enumeration when the driver has it, the default display
+	 * otherwise. The context is made current without a surface when EGL_KHR_surfaceless_context is
+	 * there, on a 1x1 pbuffer otherwise; either way the frames are drawn into the framebuffer.
+	 * OpenGL is loaded through eglGetProcAddress, so no libGL or GLX is needed.
+	 */
+	private void createEglContext() {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			eglDisplay = eglDeviceDisplay(stack);
+			if (eglDisplay == EGL_NO_DISPLAY) {
+				eglDisplay = eglGetDisplay(EGL_DEFAULT_DISPLAY);
+			}
+			IntBuffer major = stack.mallocInt(1), minor = stack.mallocInt(1);
+			if (eglDisplay == EGL_NO_DISPLAY || !eglInitialize(eglDisplay, major, minor)) {
+				throw new IllegalStateException("Unable to initialize EGL, error 0x" + Integer.toHexString(eglGetError()) + ".");
+			}
+			EGLCapabilities caps = EGL.createDisplayCapabilities(eglDisplay, major.get(0), minor.get(0));
+			if (!eglBindAPI(EGL_OPENGL_API)) {
+				throw new IllegalStateException("The EGL driver doesn't support desktop OpenGL.");
+			}
+
+			IntBuffer configAttribs = stack.ints(
+					EGL_SURFACE_TYPE, EGL_PBUFFER_BIT,
+					EGL_RENDERABLE_TYPE, EGL_OPENGL_BIT,
+					EGL_RED_SIZE, 8, EGL_GREEN_SIZE, 8, EGL_BLUE_SIZE, 8, EGL_ALPHA_SIZE, 8,
+					EGL_NONE);
+			PointerBuffer config = stack.mallocPointer(1);
+			IntBuffer configCount = stack.mallocInt(1);
+			if (!eglChooseConfig(eglDisplay, configAttribs, config, configCount) || configCount.get(0) == 0) {
+				throw new IllegalStateException("No EGL config supports OpenGL with a pbuffer.");
+			}
+
+			IntBuffer contextAttribs = caps.EGL15 || caps.EGL_KHR_create_context
+					? stack.ints(EGL_CONTEXT_MAJOR_VERSION, 3, EGL_CONTEXT_MINOR_VERSION, 3,
+					EGL_CONTEXT_OPENGL_PROFILE_MASK, EGL_CONTEXT_OPENGL_CORE_PROFILE_BIT, EGL_NONE)
+					: stack.ints(EGL_NONE);
+			eglContext = eglCreateContext(eglDisplay, config.get(0), EGL_NO_CONTEXT, contextAttribs);
+			if (eglContext == EGL_NO_CONTEXT) {
+				throw new IllegalStateException("Failed to create an EGL context, error 0x" + Integer.toHexString(eglGetError()) + ".");
+			}
+			if (!caps.EGL_KHR_surfaceless_context) {
+				eglSurface = eglCreatePbufferSurface(eglDisplay, config.get(0), stack.ints(EGL_WIDTH, 1, EGL_HEIGHT, 1, EGL_NONE));
+			}
+			if (!eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
+				throw new IllegalStateException("Failed to make the EGL context current, error 0x" + Integer.toHexString(eglGetError()) + ".");
+			}
+		}
+
+		Configuration.OPENGL_EXPLICIT_INIT.set(true);
+		GL.destroy();
+		GL.create(EGL.getFunctionProvider());
+		GL.createCapabilities();
+	}
+
+	/**
+	 * Returns the display of the first device EGL can render on, which needs no window system
+	 *
+	 * @param stack The stack to allocate the query buffers on.
+	 * @return The display, or EGL_NO_DISPLAY if the driver can't list its devices.
+	 */
+	private static long eglDeviceDisplay(MemoryStack stack) {
+		EGLCapabilities client = EGL.getCapabilities();
+		if (!client.EGL_EXT_platform_base || !client.EGL_EXT_device_enumeration || !client.EGL_EXT_platform_device) {
+			return EGL_NO_DISPLAY;
+		}
+		PointerBuffer devices = stack.mallocPointer(1);
+		IntBuffer deviceCount = stack.mallocInt(1);
+		if (!eglQueryDevicesEXT(devices, deviceCount) || deviceCount.get(0) == 0) {
+			return EGL_NO_DISPLAY;
+		}
+		return eglGetPlatformDisplayEXT(EGL_PLATFORM_DEVICE_EXT, devices.get(0), (IntBuffer) null);
+	}
+
+	/**
+	 * Starts a frame: the framebuffer becomes the draw target and is cleared
+	 *
+	 * @param r The red component of the clear color.
+	 * @param g The green component of the clear color.
+	 * @param b The blue component of the clear color.
+	 * @param a The alpha component of the clear color.
+	 */
+	public void beginFrame(float r, float g, float b, float a) {
+		framebuffer.bind();
+		glClearColor(r, g, b, a);
+		glClear(GL_COLOR_BUFFER_BIT);
+	}
+
+	/**
+	 * Waits for the frame to be drawn and reads it back
+	 *
+	 * @param dest A buffer of at least width * height * 4 bytes, or null to allocate one.
+	 * @return The RGBA pixels of the frame, bottom row first.
+	 */
+	public ByteBuffer readFrame(ByteBuffer dest) {
+		return framebuffer.readPixels(dest);
+	}
+
+	/**
+	 * Reads the frame back and writes it as a PNG image, top row first
+	 *
+	 * @param path The path of the image.
+	 * @throws IOException If the image can't be written.
+	 */
+	public void saveFrame(Path path) throws IOException {
+		ByteBuffer pixels = readFrame(null);
+		stbi_flip_vertically_on_write(true);
+		boolean written = stbi_write_png(path.toString(), framebuffer.getWidth(), framebuffer.getHeight(), 4,
+				pixels, framebuffer.getWidth() * 4);
+		stbi_flip_vertically_on_write(false);
+		if (!written) {
+			throw new IOException("Could not write the frame to '" + path + "'.");
+		}
+	}
+
+	/**
+	 * Returns the framebuffer the frames are drawn into
+	 *
+	 * @return The framebuffer of the context.
+	 */
+	public Framebuffer framebuffer() {
+		return this.framebuffer;
+	}
+
+	/**
+	 * Destroys the framebuffer, the context and its window or EGL display
+	 */
+	@Override
+	public void close() {
+		framebuffer.destroy();
+		if (eglDisplay != EGL_NO_DISPLAY) {
+			eglMakeCurrent(eglDisplay, EGL_NO_SURFACE, EGL_NO_SURFACE, EGL_NO_CONTEXT);
+			if (eglSurface != EGL_NO_SURFACE) {
+				eglDestroySurface(eglDisplay, eglSurface);
+			}
+			eglDestroyContext(eglDisplay, eglContext);
+			eglTerminate(eglDisplay);
+			return;
+		}
+		glfwDestroyWindow(glfwWindow);
+		glfwTerminate();
+		GLFWErrorCallback callback = glfwSetErrorCallback(null);
+		if (callback != null) {
+			callback.free();
+		}
+	}
+}
@@ -2,25 +2,42 @@ package glengine;
 
 import renderer.Renderer;
 import imgui.ImGui;
-import com.google.gson.*;
 
 import java.io.IOException;
-import java.io.FileWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
 public abstract class Scene {
+	static final String LEVEL_JSON = "Level.txt";
+	static final String LEVEL_BINARY = "Level.bin";
+	static final String LEVEL_BINARY_TEMP = "Level.bin.tmp";
+	static final String LEVEL_BINARY_PARTIAL = "Level.partial.bin";
 
-	protected Renderer renderer = new Renderer();
+	protected Renderer renderer;
 	protected Camera camera;
 	private boolean isRunning = false;
 	protected List<GameObject> gameObjects = new ArrayList<>();
 	protected GameObject activeGameObject = null;
 	protected boolean levelLoaded = false;
+	private LevelReader pendingLevel;
+	private boolean levelIncomplete;
+	private int loadBudget = 0;
 
 	public Scene() {
+		this(new Renderer());
+	}
 
+	/**
+	 * @param renderer The renderer that draws the game objects, a {@link renderer.NullRenderer}
+	 *                 for a scene that is only simulated.
+	 */
+	protected Scene(Renderer renderer) {
+		this.renderer = renderer;
 	}
 
 	/**
@@ -42,11 +59,12 @@ public abstract class Scene {
 	}
 
 	/**
-	 * Adds a game object to the scene
+	 * Adds a game object to the scene, which becomes the scene the game object reports its changes to
 	 *
 	 * @param go The GameObject to add to the scene.
 	 */
 	public void addGameObjectToScene(GameObject go) {
+		go.setScene(this);
 		if (!isRunning) {
 			gameObjects.add(go);
 		} else {
@@ -56,6 +74,20 @@ public abstract class Scene {
 		}
 	}
 
+	/**
+	 * Removes a game object from the scene and stops drawing it
+	 *
+	 * @param go The GameObject to remove from the scene.
+	 */
+	public void removeGameObject(GameObject go) {
+		if (gameObjects.remove(go) && isRunning) {
+			go.destroy();
+		}
+		if (go.getScene() == this) {
+			go.setScene(null);
+		}
+	}
+
 	/**
 	 * "Update the game state."
 	 * <p>
@@ -65,6 +97,29 @@ public abstract class Scene {
 	 */
 	public abstract void update(float dt);
 
+	/**
+	 * Runs one fixed simulation step: a new step starts, so the transforms changed from now on
+	 * save the state they had before, then the scene is {@link #update(float) updated}. Nothing is
+	 * done for the game objects that don't move.
+	 *
+	 * @param dt The duration of the step in seconds.
+	 */
+	public void step(float dt) {
+		Transform.advanceStep();
+		update(dt);
+	}
+
+	/**
+	 * Draws the scene between the last two simulation steps. It can be called any number of times
+	 * between two steps.
+	 *
+	 * @param alpha How far the frame is from the previous step to the last one, in [0, 1].
+	 */
+	public void render(float alpha) {
+		this.renderer.setInterpolation(alpha);
+		this.renderer.render(this.camera);
+	}
+
 	/**
 	 * Returns the camera that is attached to the scene
 	 *
@@ -74,6 +129,24 @@ public abstract class Scene {
 		return this.camera;
 	}
 
+	/**
+	 * Returns the renderer that draws the game objects of the scene
+	 *
+	 * @return The renderer object.
+	 */
+	public Renderer renderer() {
+		return this.renderer;
+	}
+
+	/**
+	 * Deletes the GL objects the scene owns, once it is no longer drawn
+	 */
+	public void destroy() {
+		if (this.camera != null) {
+			this.camera.destroy();
+		}
+	}
+
 	public void sceneImgui() {
 		if (activeGameObject != null) {
 			ImGui.begin("inspector");
@@ -88,41 +161,135 @@ public abstract class Scene {
 
 	}
 
+	/**
+	 * Saves the game objects of the scene to the binary level file, streaming them one at a time.
+	 * A level still loading is finished first, so its remaining objects aren't lost. The level is
+	 * written to a temporary file that then replaces the previous one, so a crash during the save
+	 * leaves the previous level intact. When the level couldn't be read to the end, the scene only
+	 * holds part of it: it is then saved to {@link #LEVEL_BINARY_PARTIAL} instead, and the damaged
+	 * level is kept for recovery.
+	 */
 	public void saveExit() {
-		Gson gson = new GsonBuilder()
-				.setPrettyPrinting()
-				.registerTypeAdapter(Component.class, new ComponentDeserializer())
-				.registerTypeAdapter(GameObject.class, new GameObjectDeserializer())
-				.create();
+		if (pendingLevel != null) {
+			loadObjects(Integer.MAX_VALUE);
+		}
+		Path target = Paths.get(levelIncomplete ? LEVEL_BINARY_PARTIAL : LEVEL_BINARY);
+		if (levelIncomplete) {
+			System.err.println("The level was only partly loaded, saving it to '" + target + "' instead.");
+		}
+		Path temp = Paths.get(LEVEL_BINARY_TEMP);
 		try {
-			FileWriter writer = new FileWriter("Level.txt");
-			writer.write(gson.toJson(this.gameObjects));
-			writer.close();
+			try (BinaryLevelWriter writer = new BinaryLevelWriter(temp)) {
+				for (GameObject go : this.gameObjects) {
+					writer.write(go);
+				}
+			}
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Opens the level saved by {@link #saveExit()}. The binary level is preferred; a JSON level
+	 * saved by an older version is still read when there is no binary one, or when the binary one
+	 * can't be opened. Without a load budget
+	 * every game object is added right away, otherwise they are added over the next frames by
+	 * {@link #loadPending()}.
+	 */
 	public void load() {
-		Gson gson = new GsonBuilder()
-				.setPrettyPrinting()
-				.registerTypeAdapter(Component.class, new ComponentDeserializer())
-				.registerTypeAdapter(GameObject.class, new GameObjectDeserializer())
-				.create();
+		closePendingLevel();
+		levelIncomplete = false;
+		Path binary = Paths.get(LEVEL_BINARY), json = Paths.get(LEVEL_JSON);
+		if (Files.isRegularFile(binary)) {
+			try {
+				this.pendingLevel = new BinaryLevelReader(binary);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (pendingLevel == null && Files.isRegularFile(json)) {
+			try {
+				this.pendingLevel = new JsonLevelReader(json);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (pendingLevel == null) {
+			return;
+		}
+
+		if (loadBudget <= 0) {
+			loadObjects(Integer.MAX_VALUE);
+		}
+	}
 
-		String inFile = "";
+	/**
+	 * Adds the next game objects of a level being loaded to the scene, at most as many as the
+	 * load budget allows. It is called once per frame and does nothing when no level is loading.
+	 */
+	public void loadPending() {
+		if (pendingLevel != null) {
+			loadObjects(loadBudget <= 0 ? Integer.MAX_VALUE : loadBudget);
+		}
+	}
+
+	/**
+	 * Sets how many game objects of a level are added to the scene per frame
+	 *
+	 * @param objectsPerFrame The number of objects, 0 or less to load the whole level at once.
+	 */
+	public void setLoadBudget(int objectsPerFrame) {
+		this.loadBudget = objectsPerFrame;
+	}
+
+	/**
+	 * Tells whether a level is still being loaded over several frames
+	 *
+	 * @return true if some game objects of the level haven't been added yet.
+	 */
+	public boolean isLoading() {
+		return pendingLevel != null;
+	}
+
+	/**
+	 * Reads game objects from the pending level and adds each one to the scene as soon as it is
+	 * built, closing the level once it is exhausted. A level that fails partway is closed and
+	 * marked incomplete, so that saving doesn't replace it with the part that was read.
+	 *
+	 * @param count The maximum number of objects to add.
+	 */
+	private void loadObjects(int count) {
 		try {
-			inFile = new String(Files.readAllBytes(java.nio.file.Paths.get("level.txt")));
+			for (int i = 0; i < count; i++) {
+				GameObject go = pendingLevel.next();
+				if (go == null) {
+					closePendingLevel();
+					return;
+				}
+				addGameObjectToScene(go);
+				this.levelLoaded = true;
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
+			levelIncomplete = true;
+			closePendingLevel();
 		}
+	}
 
-		if (!inFile.equals("")) {
-			GameObject[] objs = gson.fromJson(inFile, GameObject[].class);
-			for (GameObject obj : objs) {
-				addGameObjectToScene(obj);
-			}
-			this.levelLoaded = true;
+	private void closePendingLevel() {
+		if (pendingLevel == null) {
+			return;
+		}
+		try {
+			pendingLevel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
+		pendingLevel = null;
 	}
 }
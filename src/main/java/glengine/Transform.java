@@ -2,11 +2,33 @@ package glengine;
 
 import org.joml.Vector2f;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Transform {
 
+	/**
+	 * Told when a transform is changed through its setters
+	 */
+	public interface Listener {
+		/**
+		 * Called after the position or the scale of the transform changed
+		 *
+		 * @param transform The transform that changed.
+		 */
+		void transformChanged(Transform transform);
+	}
+
+	private static long currentStep;
+
 	public Vector2f position;
 	public Vector2f scale;
 
+	private transient Vector2f previousPosition, previousScale;
+	private transient long changedStep = Long.MIN_VALUE;
+	private transient int version;
+	private transient List<Listener> listeners;
+
 	public Transform() {
 		init(new Vector2f(), new Vector2f());
 	}
@@ -29,8 +51,176 @@ public class Transform {
 	}
 
 	public void copy(Transform to) {
+		to.beforeChange();
 		to.position.set(this.position);
 		to.scale.set(this.scale);
+		to.changed();
+	}
+
+	/**
+	 * Moves the transform to the given position
+	 *
+	 * @param x The new x coordinate.
+	 * @param y The new y coordinate.
+	 */
+	public void setPosition(float x, float y) {
+		if (position.x == x && position.y == y) {
+			return;
+		}
+		beforeChange();
+		position.set(x, y);
+		changed();
+	}
+
+	public void setPosition(Vector2f position) {
+		setPosition(position.x, position.y);
+	}
+
+	/**
+	 * Moves the transform by the given offset
+	 *
+	 * @param dx The offset along x.
+	 * @param dy The offset along y.
+	 */
+	public void translate(float dx, float dy) {
+		setPosition(position.x + dx, position.y + dy);
+	}
+
+	/**
+	 * Resizes the transform
+	 *
+	 * @param x The new width.
+	 * @param y The new height.
+	 */
+	public void setScale(float x, float y) {
+		if (scale.x == x && scale.y == y) {
+			return;
+		}
+		beforeChange();
+		scale.set(x, y);
+		changed();
+	}
+
+	public void setScale(Vector2f scale) {
+		setScale(scale.x, scale.y);
+	}
+
+	/**
+	 * Reports a change made by writing {@link #position} or {@link #scale} directly. The state of
+	 * the previous step can't be recovered then, so the change isn't interpolated.
+	 */
+	public void markChanged() {
+		if (changedStep != currentStep) {
+			previousPosition = null;
+			previousScale = null;
+			changedStep = currentStep;
+		}
+		changed();
+	}
+
+	/**
+	 * Returns a counter increased by every change of the transform
+	 *
+	 * @return The version of the transform.
+	 */
+	public int version() {
+		return this.version;
+	}
+
+	/**
+	 * Starts telling the given listener about the changes of the transform
+	 *
+	 * @param listener The listener to add.
+	 */
+	public void addListener(Listener listener) {
+		if (listeners == null) {
+			listeners = new ArrayList<>(1);
+		}
+		listeners.add(listener);
+	}
+
+	/**
+	 * Stops telling the given listener about the changes of the transform
+	 *
+	 * @param listener The listener to remove.
+	 */
+	public void removeListener(Listener listener) {
+		if (listeners != null) {
+			listeners.remove(listener);
+		}
+	}
+
+	/**
+	 * Starts a new simulation step. The transforms don't copy their state on every step: the
+	 * first change of a transform during a step saves the state it had when the step began.
+	 */
+	static void advanceStep() {
+		currentStep++;
+	}
+
+	/**
+	 * Saves the state the transform had at the beginning of the current step, the first time it
+	 * changes during that step
+	 */
+	private void beforeChange() {
+		if (changedStep == currentStep) {
+			return;
+		}
+		if (previousPosition == null) {
+			previousPosition = new Vector2f();
+			previousScale = new Vector2f();
+		}
+		previousPosition.set(position);
+		previousScale.set(scale);
+		changedStep = currentStep;
+	}
+
+	private void changed() {
+		version++;
+		if (listeners != null) {
+			for (int i = 0; i < listeners.size(); i++) {
+				listeners.get(i).transformChanged(this);
+			}
+		}
+	}
+
+	/**
+	 * Returns true while the interpolated state differs from the last one drawn: the transform
+	 * changed during the last step, or it changed during the step before and was drawn somewhere
+	 * between the two states
+	 *
+	 * @return A boolean value.
+	 */
+	public boolean isInterpolating() {
+		return changedStep >= currentStep - 1;
+	}
+
+	/**
+	 * Blends the position at the beginning of the last step with the current one
+	 *
+	 * @param alpha How far to go from the previous position, 0 for it and 1 for the current one.
+	 * @param dest  Will hold the result.
+	 * @return dest.
+	 */
+	public Vector2f interpolatePosition(float alpha, Vector2f dest) {
+		if (changedStep != currentStep || previousPosition == null) {
+			return dest.set(position);
+		}
+		return previousPosition.lerp(position, alpha, dest);
+	}
+
+	/**
+	 * Blends the scale at the beginning of the last step with the current one
+	 *
+	 * @param alpha How far to go from the previous scale, 0 for it and 1 for the current one.
+	 * @param dest  Will hold the result.
+	 * @return dest.
+	 */
+	public Vector2f interpolateScale(float alpha, Vector2f dest) {
+		if (changedStep != currentStep || previousScale == null) {
+			return dest.set(scale);
+		}
+		return previousScale.lerp(scale, alpha, dest);
 	}
 
 	@Override
@@ -3,6 +3,7 @@ package glengine;
 import org.lwjgl.Version;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.opengl.GL;
+import util.AssetPool;
 
 import static java.util.Objects.requireNonNull;
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
@@ -15,6 +16,7 @@ public class Window {
 	private final String title;
 	private long glfwWindow;
 	private ImGuiLayer imguiLayer;
+	private final FixedTimestep timestep = new FixedTimestep();
 
 	public float r, g, b, a;
 
@@ -35,6 +37,9 @@ public class Window {
 	 * @param newScene The scene to switch to.
 	 */
 	public static void changeScene(int newScene) {
+		if (currentScene != null) {
+			currentScene.destroy();
+		}
 		switch (newScene) {
 			case 0:
 				currentScene = new LevelEditorScene();
@@ -142,7 +147,8 @@ public class Window {
 	}
 
 	/**
-	 * The main loop of the game.
+	 * The main loop of the game. The time of each frame is turned into fixed simulation steps, and
+	 * the scene is drawn between the last two of them, so a slow frame never makes a step longer.
 	 */
 	public void loop() {
 		float beginTime = (float) glfwGetTime();
@@ -156,8 +162,14 @@ public class Window {
 			glClearColor(r, g, b, a);
 			glClear(GL_COLOR_BUFFER_BIT);
 
+			AssetPool.uploadPendingTextures();
+			currentScene.loadPending();
 			if (dt >= 0) {
-				currentScene.update(dt);
+				int steps = timestep.advance(dt);
+				for (int i = 0; i < steps; i++) {
+					currentScene.step(timestep.step());
+				}
+				currentScene.render(timestep.alpha());
 			}
 
 			this.imguiLayer.update(dt, currentScene);
@@ -168,6 +180,16 @@ public class Window {
 			beginTime = endTime;
 		}
 		currentScene.saveExit();
+		currentScene.destroy();
+	}
+
+	/**
+	 * Returns the fixed timestep that drives the simulation of the scenes
+	 *
+	 * @return The timestep of the main loop.
+	 */
+	public static FixedTimestep timestep() {
+		return get().timestep;
 	}
 
 	/**
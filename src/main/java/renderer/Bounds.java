@@ -0,0 +1,58 @@
+package renderer;
+
+import org.joml.Vector4f;
+
+/**
+ * The rectangle tests of the view culling. A rectangle is stored as (minX, minY, maxX, maxY),
+ * either in a Vector4f or as four consecutive floats of an array. Rectangles that only share an
+ * edge count as touching, so a sprite lying exactly on the border of the view is still drawn.
+ */
+final class Bounds {
+	private Bounds() {
+	}
+
+	/**
+	 * Returns true if the rectangle stored at the given offset of the array touches the area
+	 *
+	 * @param rects  The rectangles, four floats each.
+	 * @param offset The index of the first float of the rectangle.
+	 * @param area   The area to test against.
+	 * @return A boolean value.
+	 */
+	static boolean touches(float[] rects, int offset, Vector4f area) {
+		return rects[offset] <= area.z && rects[offset + 2] >= area.x
+				&& rects[offset + 1] <= area.w && rects[offset + 3] >= area.y;
+	}
+
+	/**
+	 * Returns true if the two rectangles touch
+	 *
+	 * @param bounds The first rectangle.
+	 * @param area   The second rectangle.
+	 * @return A boolean value.
+	 */
+	static boolean touches(Vector4f bounds, Vector4f area) {
+		return bounds.x <= area.z && bounds.z >= area.x && bounds.y <= area.w && bounds.w >= area.y;
+	}
+
+	/**
+	 * Writes the smallest rectangle holding the first rectangles of the array into dest. With no
+	 * rectangle, dest is left empty: its minimum is above its maximum, so it touches nothing.
+	 *
+	 * @param rects The rectangles, four floats each.
+	 * @param count The number of rectangles to include.
+	 * @param dest  The vector that receives the union.
+	 * @return The dest vector.
+	 */
+	static Vector4f union(float[] rects, int count, Vector4f dest) {
+		dest.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+				Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+		for (int b = 0; b < count * 4; b += 4) {
+			dest.x = Math.min(dest.x, rects[b]);
+			dest.y = Math.min(dest.y, rects[b + 1]);
+			dest.z = Math.max(dest.z, rects[b + 2]);
+			dest.w = Math.max(dest.w, rects[b + 3]);
+		}
+		return dest;
+	}
+}
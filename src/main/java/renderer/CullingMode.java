@@ -0,0 +1,24 @@
+package renderer;
+
+/**
+ * How much of the scene the {@link Renderer} leaves out of the draw calls when it lies outside the
+ * view of the camera.
+ */
+public enum CullingMode {
+	/**
+	 * Every batch is drawn whole.
+	 */
+	NONE,
+
+	/**
+	 * A batch whose bounds don't touch the view of the camera is not drawn at all. Its sprites are
+	 * still kept up to date, so the bounds follow them.
+	 */
+	BATCH,
+
+	/**
+	 * Like {@link #BATCH}, and a visible batch only draws the runs of consecutive sprites that touch
+	 * the view, one draw call per run. It pays off on batches that span much more than a screen.
+	 */
+	SPRITE
+}
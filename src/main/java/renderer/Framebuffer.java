@@ -0,0 +1,100 @@
+package renderer;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * An offscreen render target: a framebuffer object with an RGBA color renderbuffer. Frames drawn
+ * into it can be read back to memory, which lets rendering be checked without showing a window.
+ */
+public class Framebuffer {
+	private final int width, height;
+	private final int fboID, colorID;
+
+	/**
+	 * Creates the framebuffer and its color attachment
+	 *
+	 * @param width  The width in pixels.
+	 * @param height The height in pixels.
+	 */
+	public Framebuffer(int width, int height) {
+		this.width = width;
+		this.height = height;
+
+		fboID = glGenFramebuffers();
+		glBindFramebuffer(GL_FRAMEBUFFER, fboID);
+		colorID = glGenRenderbuffers();
+		glBindRenderbuffer(GL_RENDERBUFFER, colorID);
+		glRenderbufferStorage(GL_RENDERBUFFER, GL_RGBA8, width, height);
+		glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_RENDERBUFFER, colorID);
+
+		int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+		glBindFramebuffer(GL_FRAMEBUFFER, 0);
+		if (status != GL_FRAMEBUFFER_COMPLETE) {
+			destroy();
+			throw new IllegalStateException("Framebuffer is not complete, status 0x" + Integer.toHexString(status) + ".");
+		}
+	}
+
+	/**
+	 * Makes the framebuffer the target of the next draw calls and covers it with the viewport
+	 */
+	public void bind() {
+		glBindFramebuffer(GL_FRAMEBUFFER, fboID);
+		glViewport(0, 0, width, height);
+	}
+
+	/**
+	 * Makes the default framebuffer the target of the next draw calls again
+	 */
+	public void unbind() {
+		glBindFramebuffer(GL_FRAMEBUFFER, 0);
+	}
+
+	/**
+	 * Reads the pixels of the framebuffer, bottom row first as OpenGL stores them
+	 *
+	 * @param dest A buffer of at least width * height * 4 bytes, or null to allocate one.
+	 * @return The RGBA pixels.
+	 */
+	public ByteBuffer readPixels(ByteBuffer dest) {
+		if (dest == null) {
+			dest = BufferUtils.createByteBuffer(width * height * 4);
+		}
+		glBindFramebuffer(GL_READ_FRAMEBUFFER, fboID);
+		glPixelStorei(GL_PACK_ALIGNMENT, 1);
+		glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, dest);
+		glBindFramebuffer(GL_READ_FRAMEBUFFER, 0);
+		return dest;
+	}
+
+	/**
+	 * Deletes the framebuffer and its color attachment
+	 */
+	public void destroy() {
+		glDeleteFramebuffers(fboID);
+		glDeleteRenderbuffers(colorID);
+	}
+
+	/**
+	 * Returns the width of the framebuffer
+	 *
+	 * @return The width in pixels.
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * Returns the height of the framebuffer
+	 *
+	 * @return The height in pixels.
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+}
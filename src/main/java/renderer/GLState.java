@@ -0,0 +1,338 @@
+package renderer;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL20.glDeleteProgram;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+/**
+ * Remembers the OpenGL bindings set by the engine and drops the calls that wouldn't change them.
+ * Every program switch, texture, vertex array and buffer bind of the renderer goes through here,
+ * so the tracked state matches the context as long as nobody else touches it. Code that does,
+ * like the ImGui layer, must be followed by {@link #invalidate()}.
+ * <p>
+ * Element array buffers are part of the vao state and are not tracked.
+ */
+public final class GLState {
+	private static final int UNKNOWN = -1;
+	private static final int MAX_UNITS = 32;
+	private static final int MAX_UNIFORM_BINDINGS = 16;
+
+	private static int program;
+	private static int activeUnit;
+	private static final int[] textures2D = new int[MAX_UNITS];
+	private static final int[] textureArrays = new int[MAX_UNITS];
+	private static int vertexArray;
+	private static int arrayBuffer, uniformBuffer, pixelUnpackBuffer;
+	private static final int[] uniformBindings = new int[MAX_UNIFORM_BINDINGS];
+
+	private static long issuedCalls, avoidedCalls;
+
+	static {
+		invalidate();
+	}
+
+	private GLState() {
+
+	}
+
+	/**
+	 * Forgets every tracked binding, so the next bind of each kind reaches the driver. It has to
+	 * be called whenever OpenGL state was changed behind the tracker's back, at the latest once
+	 * per frame.
+	 */
+	public static void invalidate() {
+		program = UNKNOWN;
+		activeUnit = UNKNOWN;
+		Arrays.fill(textures2D, UNKNOWN);
+		Arrays.fill(textureArrays, UNKNOWN);
+		vertexArray = UNKNOWN;
+		arrayBuffer = UNKNOWN;
+		uniformBuffer = UNKNOWN;
+		pixelUnpackBuffer = UNKNOWN;
+		Arrays.fill(uniformBindings, UNKNOWN);
+	}
+
+	/**
+	 * Makes the given program current
+	 *
+	 * @param programID The id of the program, 0 for none.
+	 */
+	public static void useProgram(int programID) {
+		if (program == programID) {
+			avoidedCalls++;
+			return;
+		}
+		glUseProgram(programID);
+		program = programID;
+		issuedCalls++;
+	}
+
+	/**
+	 * Selects the texture unit the next texture bind applies to
+	 *
+	 * @param unit The index of the unit, starting at 0 for GL_TEXTURE0.
+	 */
+	public static void activeTexture(int unit) {
+		if (activeUnit == unit) {
+			avoidedCalls++;
+			return;
+		}
+		glActiveTexture(GL_TEXTURE0 + unit);
+		activeUnit = unit;
+		issuedCalls++;
+	}
+
+	/**
+	 * Binds a texture to the given unit. The active unit is only switched when the binding
+	 * actually changes.
+	 *
+	 * @param unit   The index of the texture unit.
+	 * @param target GL_TEXTURE_2D or GL_TEXTURE_2D_ARRAY.
+	 * @param texID  The id of the texture, 0 to unbind.
+	 */
+	public static void bindTexture(int unit, int target, int texID) {
+		int[] bound = boundTextures(target);
+		if (bound != null && unit < MAX_UNITS && bound[unit] == texID) {
+			avoidedCalls++;
+			return;
+		}
+		activeTexture(unit);
+		bindTexture(target, texID);
+	}
+
+	/**
+	 * Binds a texture to the currently active unit, for example to upload its pixels
+	 *
+	 * @param target The texture target.
+	 * @param texID  The id of the texture, 0 to unbind.
+	 */
+	public static void bindTexture(int target, int texID) {
+		int[] bound = boundTextures(target);
+		boolean tracked = bound != null && activeUnit >= 0 && activeUnit < MAX_UNITS;
+		if (tracked && bound[activeUnit] == texID) {
+			avoidedCalls++;
+			return;
+		}
+		glBindTexture(target, texID);
+		if (tracked) {
+			bound[activeUnit] = texID;
+		}
+		issuedCalls++;
+	}
+
+	/**
+	 * Binds the given vertex array
+	 *
+	 * @param vaoID The id of the vertex array, 0 for none.
+	 */
+	public static void bindVertexArray(int vaoID) {
+		if (vertexArray == vaoID) {
+			avoidedCalls++;
+			return;
+		}
+		glBindVertexArray(vaoID);
+		vertexArray = vaoID;
+		issuedCalls++;
+	}
+
+	/**
+	 * Binds a buffer to a target. Array, uniform and pixel unpack buffers are tracked, other
+	 * targets are always passed through.
+	 *
+	 * @param target   The buffer target.
+	 * @param bufferID The id of the buffer, 0 to unbind.
+	 */
+	public static void bindBuffer(int target, int bufferID) {
+		if (boundBuffer(target) == bufferID) {
+			avoidedCalls++;
+			return;
+		}
+		glBindBuffer(target, bufferID);
+		setBoundBuffer(target, bufferID);
+		issuedCalls++;
+	}
+
+	/**
+	 * Binds a uniform buffer to an indexed binding point. Like glBindBufferBase, it also binds
+	 * the buffer to the generic uniform buffer target.
+	 *
+	 * @param index    The binding point.
+	 * @param bufferID The id of the buffer.
+	 */
+	public static void bindUniformBufferBase(int index, int bufferID) {
+		if (index < MAX_UNIFORM_BINDINGS && uniformBindings[index] == bufferID) {
+			avoidedCalls++;
+			return;
+		}
+		glBindBufferBase(GL_UNIFORM_BUFFER, index, bufferID);
+		if (index < MAX_UNIFORM_BINDINGS) {
+			uniformBindings[index] = bufferID;
+		}
+		uniformBuffer = bufferID;
+		issuedCalls++;
+	}
+
+	/**
+	 * Deletes a program, forgetting it if it is current
+	 *
+	 * @param programID The id of the program.
+	 */
+	public static void deleteProgram(int programID) {
+		glDeleteProgram(programID);
+		if (program == programID) {
+			program = UNKNOWN;
+		}
+	}
+
+	/**
+	 * Deletes a texture. OpenGL unbinds it from every unit, so does the tracker, otherwise a new
+	 * texture reusing the id would never be bound.
+	 *
+	 * @param texID The id of the texture.
+	 */
+	public static void deleteTexture(int texID) {
+		glDeleteTextures(texID);
+		for (int i = 0; i < MAX_UNITS; i++) {
+			if (textures2D[i] == texID) {
+				textures2D[i] = UNKNOWN;
+			}
+			if (textureArrays[i] == texID) {
+				textureArrays[i] = UNKNOWN;
+			}
+		}
+	}
+
+	/**
+	 * Deletes a vertex array, forgetting it if it is bound
+	 *
+	 * @param vaoID The id of the vertex array.
+	 */
+	public static void deleteVertexArray(int vaoID) {
+		glDeleteVertexArrays(vaoID);
+		if (vertexArray == vaoID) {
+			vertexArray = UNKNOWN;
+		}
+	}
+
+	/**
+	 * Deletes a buffer, forgetting it everywhere it is bound
+	 *
+	 * @param bufferID The id of the buffer.
+	 */
+	public static void deleteBuffer(int bufferID) {
+		glDeleteBuffers(bufferID);
+		if (arrayBuffer == bufferID) {
+			arrayBuffer = UNKNOWN;
+		}
+		if (uniformBuffer == bufferID) {
+			uniformBuffer = UNKNOWN;
+		}
+		if (pixelUnpackBuffer == bufferID) {
+			pixelUnpackBuffer = UNKNOWN;
+		}
+		for (int i = 0; i < MAX_UNIFORM_BINDINGS; i++) {
+			if (uniformBindings[i] == bufferID) {
+				uniformBindings[i] = UNKNOWN;
+			}
+		}
+	}
+
+	/**
+	 * Returns how many state changes were dropped because they wouldn't have changed anything
+	 *
+	 * @return The number of avoided calls since the last reset.
+	 */
+	public static long avoidedCalls() {
+		return avoidedCalls;
+	}
+
+	/**
+	 * Returns how many state changes reached the driver
+	 *
+	 * @return The number of issued calls since the last reset.
+	 */
+	public static long issuedCalls() {
+		return issuedCalls;
+	}
+
+	/**
+	 * Sets both call counters back to zero, for example at the start of a frame
+	 */
+	public static void resetCounters() {
+		issuedCalls = 0;
+		avoidedCalls = 0;
+	}
+
+	/**
+	 * Returns the per-unit bindings of a texture target
+	 *
+	 * @param target The texture target.
+	 * @return The bindings, or null if the target is not tracked.
+	 */
+	private static int[] boundTextures(int target) {
+		switch (target) {
+			case GL_TEXTURE_2D:
+				return textures2D;
+			case GL_TEXTURE_2D_ARRAY:
+				return textureArrays;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Returns the buffer bound to a target
+	 *
+	 * @param target The buffer target.
+	 * @return The id of the buffer, or UNKNOWN if the target is not tracked.
+	 */
+	private static int boundBuffer(int target) {
+		switch (target) {
+			case GL_ARRAY_BUFFER:
+				return arrayBuffer;
+			case GL_UNIFORM_BUFFER:
+				return uniformBuffer;
+			case GL_PIXEL_UNPACK_BUFFER:
+				return pixelUnpackBuffer;
+			default:
+				return UNKNOWN;
+		}
+	}
+
+	/**
+	 * Remembers the buffer bound to a target, if the target is tracked
+	 *
+	 * @param target   The buffer target.
+	 * @param bufferID The id of the buffer.
+	 */
+	private static void setBoundBuffer(int target, int bufferID) {
+		switch (target) {
+			case GL_ARRAY_BUFFER:
+				arrayBuffer = bufferID;
+				break;
+			case GL_UNIFORM_BUFFER:
+				uniformBuffer = bufferID;
+				break;
+			case GL_PIXEL_UNPACK_BUFFER:
+				pixelUnpackBuffer = bufferID;
+				break;
+			default:
+				break;
+		}
+	}
+}
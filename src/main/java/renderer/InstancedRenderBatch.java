@@ -0,0 +1,147 @@
+package renderer;
+
+import components.SpriteRenderer;
+import org.joml.Vector2f;
+import org.joml.Vector4f;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+import static org.lwjgl.opengl.GL42.glDrawElementsInstancedBaseInstance;
+
+/**
+ * A batch that uploads a single record per sprite and draws a static unit quad once per sprite
+ * with glDrawElementsInstanced. The vertex shader expands the quad, so the CPU writes 13 floats
+ * per sprite instead of 4 full vertices.
+ */
+public class InstancedRenderBatch extends SpriteBatch {
+	private static final String SHPT = "assets/shaders/instanced.glsl";
+	private static final int INSTANCE_FLOATS = 13;
+	private static final int INSTANCE_BYTES = INSTANCE_FLOATS * Float.BYTES;
+	private static final float[] QUAD_CORNERS = {1, 1, 1, 0, 0, 0, 0, 1};
+	private static final int[] QUAD_INDICES = {3, 2, 0, 0, 2, 1};
+
+	private int quadID, eboID;
+	private boolean baseInstance;
+
+	public InstancedRenderBatch(int maxBatchSize, int zIndex, UploadMode uploadMode) {
+		super(maxBatchSize, zIndex, uploadMode, INSTANCE_BYTES, SHPT);
+	}
+
+	@Override
+	protected void setupAttributes(int spriteBufferID) {
+		glVertexAttribPointer(1, 2, GL_FLOAT, false, INSTANCE_BYTES, 0);
+		glVertexAttribPointer(2, 2, GL_FLOAT, false, INSTANCE_BYTES, 8);
+		glVertexAttribPointer(3, 4, GL_FLOAT, false, INSTANCE_BYTES, 16);
+		glVertexAttribPointer(4, 4, GL_FLOAT, false, INSTANCE_BYTES, 32);
+		glVertexAttribPointer(5, 1, GL_FLOAT, false, INSTANCE_BYTES, 48);
+		for (int i = 1; i <= 5; i++) {
+			glVertexAttribDivisor(i, 1);
+			glEnableVertexAttribArray(i);
+		}
+
+		quadID = glGenBuffers();
+		GLState.bindBuffer(GL_ARRAY_BUFFER, quadID);
+		glBufferData(GL_ARRAY_BUFFER, QUAD_CORNERS, GL_STATIC_DRAW);
+		glVertexAttribPointer(0, 2, GL_FLOAT, false, 2 * Float.BYTES, 0);
+		glEnableVertexAttribArray(0);
+
+		eboID = glGenBuffers();
+		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
+		glBufferData(GL_ELEMENT_ARRAY_BUFFER, QUAD_INDICES, GL_STATIC_DRAW);
+
+		GLCapabilities caps = GL.getCapabilities();
+		baseInstance = caps.OpenGL42 || caps.GL_ARB_base_instance;
+	}
+
+	@Override
+	protected void destroyBuffers() {
+		GLState.deleteBuffer(quadID);
+		GLState.deleteBuffer(eboID);
+	}
+
+	@Override
+	protected void draw(int firstSprite, int start, int count) {
+		int baseInstance = firstSprite + start;
+		if (baseInstance == 0) {
+			glDrawElementsInstanced(GL_TRIANGLES, 6, GL_UNSIGNED_INT, 0, count);
+		} else {
+			glDrawElementsInstancedBaseInstance(GL_TRIANGLES, 6, GL_UNSIGNED_INT, 0, count, baseInstance);
+		}
+	}
+
+	/**
+	 * A run that doesn't start at the first instance needs a base instance, which is core only
+	 * since OpenGL 4.2.
+	 *
+	 * @return A boolean value.
+	 */
+	@Override
+	protected boolean canDrawRuns() {
+		return baseInstance;
+	}
+
+	/**
+	 * Writes the instance record of a sprite: position, scale, color, the rectangle of its texture
+	 * coordinates and its texture slot
+	 *
+	 * @param index The index of the sprite in the sprites array.
+	 */
+	@Override
+	protected void loadSprite(int index) {
+		SpriteRenderer sprite = this.sprites[index];
+		interpolate(sprite.gameObject.transform);
+		Vector4f color = sprite.getColor();
+		Vector2f[] texCoords = sprite.getTexCoords();
+
+		float uScale = uScale(sprite.getTexture()), vScale = vScale(sprite.getTexture());
+
+		int offset = index * INSTANCE_BYTES;
+		spriteData.putFloat(offset, spritePosition.x);
+		spriteData.putFloat(offset + 4, spritePosition.y);
+		spriteData.putFloat(offset + 8, spriteScale.x);
+		spriteData.putFloat(offset + 12, spriteScale.y);
+		spriteData.putFloat(offset + 16, color.x);
+		spriteData.putFloat(offset + 20, color.y);
+		spriteData.putFloat(offset + 24, color.z);
+		spriteData.putFloat(offset + 28, color.w);
+		spriteData.putFloat(offset + 32, texCoords[2].x * uScale);
+		spriteData.putFloat(offset + 36, texCoords[2].y * vScale);
+		spriteData.putFloat(offset + 40, texCoords[0].x * uScale);
+		spriteData.putFloat(offset + 44, texCoords[0].y * vScale);
+		spriteData.putFloat(offset + 48, textureSlot(sprite.getTexture()));
+	}
+
+	/**
+	 * Writes the instance records of the stored sprites, walking the arrays of the store in order
+	 *
+	 * @param store The sprite store of the batch.
+	 * @param from  The index of the first sprite, inclusive.
+	 * @param to    The index of the last sprite, exclusive.
+	 */
+	@Override
+	protected void writeSprites(SpriteStore store, int from, int to) {
+		int offset = from * INSTANCE_BYTES;
+		for (int i = from; i < to; i++) {
+			int t = i * 8;
+			spriteData.putFloat(offset, store.x[i]);
+			spriteData.putFloat(offset + 4, store.y[i]);
+			spriteData.putFloat(offset + 8, store.width[i]);
+			spriteData.putFloat(offset + 12, store.height[i]);
+			spriteData.putFloat(offset + 16, store.r[i]);
+			spriteData.putFloat(offset + 20, store.g[i]);
+			spriteData.putFloat(offset + 24, store.b[i]);
+			spriteData.putFloat(offset + 28, store.a[i]);
+			spriteData.putFloat(offset + 32, store.uv[t + 4]);
+			spriteData.putFloat(offset + 36, store.uv[t + 5]);
+			spriteData.putFloat(offset + 40, store.uv[t]);
+			spriteData.putFloat(offset + 44, store.uv[t + 1]);
+			spriteData.putFloat(offset + 48, store.texSlot[i]);
+			offset += INSTANCE_BYTES;
+		}
+	}
+}
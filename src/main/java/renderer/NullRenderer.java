@@ -0,0 +1,42 @@
+package renderer;
+
+import components.SpriteRenderer;
+import glengine.Camera;
+import glengine.GameObject;
+
+/**
+ * A renderer that draws nothing and never touches OpenGL. Scenes that are only simulated, like
+ * the headless ones on machines without a display, use it so that their game objects and
+ * components run exactly as they would with a window.
+ */
+public class NullRenderer extends Renderer {
+	@Override
+	public void add(GameObject go) {
+
+	}
+
+	@Override
+	public void updateZIndex(GameObject go) {
+
+	}
+
+	@Override
+	public void updateStatic(GameObject go) {
+
+	}
+
+	@Override
+	public void remove(GameObject go) {
+
+	}
+
+	@Override
+	public void remove(SpriteRenderer sprite) {
+
+	}
+
+	@Override
+	public void render(Camera camera) {
+
+	}
+}
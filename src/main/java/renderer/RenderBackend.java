@@ -0,0 +1,17 @@
+package renderer;
+
+/**
+ * The kind of batches a {@link Renderer} draws its sprites with.
+ */
+public enum RenderBackend {
+	/**
+	 * {@link RenderBatch}: every sprite is expanded into four vertices on the CPU.
+	 */
+	BATCHED,
+
+	/**
+	 * {@link InstancedRenderBatch}: one record per sprite, the quad is expanded by the vertex
+	 * shader. Needs OpenGL 3.3.
+	 */
+	INSTANCED
+}
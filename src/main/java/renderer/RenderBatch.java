@@ -1,151 +1,60 @@
 package renderer;
 
 import components.SpriteRenderer;
-import glengine.Window;
 import org.joml.Vector2f;
 import org.joml.Vector4f;
-import util.AssetPool;
-
-import java.util.ArrayList;
-import java.util.List;
 
 import static org.lwjgl.opengl.GL15.*;
-import static org.lwjgl.opengl.GL20.glDisableVertexAttribArray;
 import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
-import static org.lwjgl.opengl.GL20C.glVertexAttribPointer;
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
-import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
 
-public class RenderBatch implements Comparable<RenderBatch> {
-	private static final boolean NRM = false;
+/**
+ * A batch that expands every sprite into four vertices on the CPU and draws them as indexed
+ * triangles.
+ */
+public class RenderBatch extends SpriteBatch {
 	private static final String SHPT = "assets/shaders/default.glsl";
-	private static final int POS_SIZE = 2;
-	private static final int COLOR_SIZE = 4;
-	private static final int TEX_COORDS_SIZE = 2;
-	private static final int TEX_ID_SIZE = 1;
-
-	private final int POS_OFFSET = 0;
-	private final int COLOR_OFFSET = POS_OFFSET + POS_SIZE * Float.BYTES;
-	private final int TEX_COORDS_OFFSET = COLOR_OFFSET + COLOR_SIZE * Float.BYTES;
-	private final int TEX_ID_OFFSET = TEX_COORDS_OFFSET + TEX_COORDS_SIZE * Float.BYTES;
-	private final int VERTEX_SIZE = 9;
-	private final int VERTEX_SIZE_BYTES = VERTEX_SIZE * Float.BYTES;
 
-	private final SpriteRenderer[] sprites;
-	private int numSprites;
-	private boolean hasRoom;
-	private final float[] vertices;
-	private final int[] texSlots = {0, 1, 2, 3, 4, 5, 6, 7};
-
-	private final List<Texture> textures;
-	private int vaoID, vboID;
-	private final int maxBatchSize;
-	private final Shader shader;
-	private final int zIndex;
+	private final VertexFormat vertexFormat;
+	private final Vector4f storedColor = new Vector4f();
+	private int eboID;
 
 	public RenderBatch(int maxBatchSize, int zIndex) {
-		this.zIndex = zIndex;
-		shader = AssetPool.getShader(SHPT);
-		this.sprites = new SpriteRenderer[maxBatchSize];
-		this.maxBatchSize = maxBatchSize;
-		vertices = new float[maxBatchSize * 4 * VERTEX_SIZE];
-
-		this.numSprites = 0;
-		this.hasRoom = true;
-		this.textures = new ArrayList<>();
+		this(maxBatchSize, zIndex, UploadMode.SUB_DATA, VertexFormat.STANDARD);
 	}
 
-	public void start() {
-		vaoID = glGenVertexArrays();
-		glBindVertexArray(vaoID);
-
-		vboID = glGenBuffers();
-		glBindBuffer(GL_ARRAY_BUFFER, vboID);
-		glBufferData(GL_ARRAY_BUFFER, (long) vertices.length * Float.BYTES, GL_DYNAMIC_DRAW);
+	public RenderBatch(int maxBatchSize, int zIndex, UploadMode uploadMode, VertexFormat vertexFormat) {
+		super(maxBatchSize, zIndex, uploadMode, 4 * vertexFormat.stride(), SHPT);
+		this.vertexFormat = vertexFormat;
+	}
 
-		int eboID = glGenBuffers();
+	@Override
+	protected void setupAttributes(int spriteBufferID) {
+		eboID = glGenBuffers();
 		int[] indices = generateIndices();
 		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
 		glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
 
-		glVertexAttribPointer(0, POS_SIZE, GL_FLOAT, NRM, VERTEX_SIZE_BYTES, POS_OFFSET);
-		glVertexAttribPointer(1, COLOR_SIZE, GL_FLOAT, NRM, VERTEX_SIZE_BYTES, COLOR_OFFSET);
-		glVertexAttribPointer(2, TEX_COORDS_SIZE, GL_FLOAT, NRM, VERTEX_SIZE_BYTES, TEX_COORDS_OFFSET);
-		glVertexAttribPointer(3, TEX_ID_SIZE, GL_FLOAT, NRM, VERTEX_SIZE_BYTES, TEX_ID_OFFSET);
+		vertexFormat.setupAttributes();
 		glEnableVertexAttribArray(0);
 		glEnableVertexAttribArray(1);
 		glEnableVertexAttribArray(2);
 		glEnableVertexAttribArray(3);
 	}
 
-	/**
-	 * Adds a sprite to the batch
-	 *
-	 * @param spr The SpriteRenderer that you want to add to the batch.
-	 */
-	public void addSprite(SpriteRenderer spr) {
-		int index = this.numSprites;
-		this.sprites[index] = spr;
-		this.numSprites++;
-
-		if (spr.getTexture() != null) {
-			if (!textures.contains(spr.getTexture())) {
-				textures.add(spr.getTexture());
-			}
-		}
-
-		loadVertexProperties(index);
-
-		if (numSprites >= this.maxBatchSize) {
-			this.hasRoom = NRM;
-		}
+	@Override
+	protected void destroyBuffers() {
+		GLState.deleteBuffer(eboID);
 	}
 
-	/**
-	 * The first thing we do is check if any of the sprites have been updated since the last time we
-	 * rendered. If so, we need to rebuffer the data. We then iterate over the sprites and load the
-	 * vertex properties into the shader. We then rebuffer the data again, but this time we don't
-	 * need to check if the sprites have been updated. We then bind the vbo, upload the data, and
-	 * draw the triangles
-	 */
-	public void render() {
-		boolean rebufferData = NRM;
-		for (int i = 0; i < numSprites; i++) {
-			SpriteRenderer spr = sprites[i];
-			if (spr.isDirty()) {
-				loadVertexProperties(i);
-				spr.setClean();
-				rebufferData = true;
-			}
-		}
-		if (rebufferData) {
-			glBindBuffer(GL_ARRAY_BUFFER, vboID);
-			glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
-		}
-
-		shader.use();
-		shader.uploadMat4f("uProjection", Window.getScene().camera().getProjectionMatrix());
-		shader.uploadMat4f("uView", Window.getScene().camera().getViewMatrix());
-		for (int i = 0; i < textures.size(); i++) {
-			glActiveTexture(GL_TEXTURE0 + i + 1);
-			textures.get(i).bind();
-		}
-		shader.uploadIntArray("uTextures", texSlots);
-
-		glBindVertexArray(vaoID);
-		glEnableVertexAttribArray(0);
-		glEnableVertexAttribArray(1);
-
-		glDrawElements(GL_TRIANGLES, this.numSprites * 6, GL_UNSIGNED_INT, 0);
-
-		glDisableVertexAttribArray(0);
-		glDisableVertexAttribArray(1);
-		glBindVertexArray(0);
-
-		for (Texture texture : textures) {
-			texture.unbind();
+	@Override
+	protected void draw(int firstSprite, int start, int count) {
+		long indexOffset = (long) start * 6 * Integer.BYTES;
+		if (firstSprite == 0) {
+			glDrawElements(GL_TRIANGLES, count * 6, GL_UNSIGNED_INT, indexOffset);
+		} else {
+			glDrawElementsBaseVertex(GL_TRIANGLES, count * 6, GL_UNSIGNED_INT, indexOffset, firstSprite * 4);
 		}
-		shader.detach();
 	}
 
 	/**
@@ -153,24 +62,18 @@ public class RenderBatch implements Comparable<RenderBatch> {
 	 *
 	 * @param index The index of the sprite in the sprites array.
 	 */
-	private void loadVertexProperties(int index) {
+	@Override
+	protected void loadSprite(int index) {
 		SpriteRenderer sprite = this.sprites[index];
 
-		int offset = index * 4 * VERTEX_SIZE;
+		int offset = index * 4 * vertexFormat.stride();
 
 		Vector4f color = sprite.getColor();
 		Vector2f[] texCoords = sprite.getTexCoords();
+		int texId = textureSlot(sprite.getTexture());
+		float uScale = uScale(sprite.getTexture()), vScale = vScale(sprite.getTexture());
 
-		int texId = 0;
-		if (sprite.getTexture() != null) {
-			for (int i = 0; i < textures.size(); i++) {
-				if (textures.get(i) == sprite.getTexture()) {
-					texId = i + 1;
-					break;
-				}
-			}
-		}
-
+		interpolate(sprite.gameObject.transform);
 		float xAdd = 1.0f, yAdd = 1.0f;
 		for (int i = 0; i < 4; i++) {
 			if (i == 1) {
@@ -181,17 +84,38 @@ public class RenderBatch implements Comparable<RenderBatch> {
 				yAdd = 1.0f;
 			}
 
-			vertices[offset] = sprite.gameObject.transform.position.x + (xAdd * sprite.gameObject.transform.scale.x);
-			vertices[offset + 1] = sprite.gameObject.transform.position.y + (yAdd * sprite.gameObject.transform.scale.y);
-			vertices[offset + 2] = color.x;
-			vertices[offset + 3] = color.y;
-			vertices[offset + 4] = color.z;
-			vertices[offset + 5] = color.w;
-			vertices[offset + 6] = texCoords[i].x;
-			vertices[offset + 7] = texCoords[i].y;
-			vertices[offset + 8] = texId;
+			float x = spritePosition.x + (xAdd * spriteScale.x);
+			float y = spritePosition.y + (yAdd * spriteScale.y);
+			vertexFormat.putVertex(spriteData, offset, x, y, color, texCoords[i].x * uScale, texCoords[i].y * vScale, texId);
+
+			offset += vertexFormat.stride();
+		}
+	}
 
-			offset += VERTEX_SIZE;
+	/**
+	 * Expands the stored sprites into four vertices each, walking the arrays of the store in order.
+	 * The corners are written in the same order as {@link #loadSprite(int)}.
+	 *
+	 * @param store The sprite store of the batch.
+	 * @param from  The index of the first sprite, inclusive.
+	 * @param to    The index of the last sprite, exclusive.
+	 */
+	@Override
+	protected void writeSprites(SpriteStore store, int from, int to) {
+		int stride = vertexFormat.stride();
+		int offset = from * 4 * stride;
+		for (int i = from; i < to; i++) {
+			float x0 = store.x[i], x1 = x0 + store.width[i];
+			float y0 = store.y[i], y1 = y0 + store.height[i];
+			int texId = store.texSlot[i];
+			int t = i * 8;
+			storedColor.set(store.r[i], store.g[i], store.b[i], store.a[i]);
+
+			vertexFormat.putVertex(spriteData, offset, x1, y1, storedColor, store.uv[t], store.uv[t + 1], texId);
+			vertexFormat.putVertex(spriteData, offset + stride, x1, y0, storedColor, store.uv[t + 2], store.uv[t + 3], texId);
+			vertexFormat.putVertex(spriteData, offset + 2 * stride, x0, y0, storedColor, store.uv[t + 4], store.uv[t + 5], texId);
+			vertexFormat.putVertex(spriteData, offset + 3 * stride, x0, y1, storedColor, store.uv[t + 6], store.uv[t + 7], texId);
+			offset += 4 * stride;
 		}
 	}
 
@@ -228,52 +152,11 @@ public class RenderBatch implements Comparable<RenderBatch> {
 	}
 
 	/**
-	 * Returns true if the room is occupied, false otherwise
-	 *
-	 * @return A boolean value.
-	 */
-	public boolean hasRoom() {
-		return this.hasRoom;
-	}
-
-	/**
-	 * If there are less than 8 textures in the textures list, return true.
+	 * Returns the vertex layout of this batch
 	 *
-	 * @return A boolean value.
+	 * @return The vertex format of the batch.
 	 */
-	public boolean hasTextureRoom() {
-		return this.textures.size() < 8;
-	}
-
-	/**
-	 * Returns true if the given texture is in the list of textures
-	 *
-	 * @param tex The texture to check for.
-	 * @return A boolean value.
-	 */
-	public boolean hasTexture(Texture tex) {
-		return this.textures.contains(tex);
-	}
-
-	/**
-	 * Returns the z-index of the object
-	 *
-	 * @return The zIndex of the current object.
-	 */
-	public int zIndex() {
-		return this.zIndex;
-	}
-
-	/**
-	 * This function compares the zIndex of this RenderBatch to the zIndex of the RenderBatch passed
-	 * in as a parameter
-	 *
-	 * @param o The RenderBatch to compare to.
-	 * @return The return type is int. The compareTo method is being overridden. The compareTo
-	 * method is being overridden to compare the zIndex of the two RenderBatch objects.
-	 */
-	@Override
-	public int compareTo(RenderBatch o) {
-		return Integer.compare(this.zIndex, o.zIndex());
+	public VertexFormat vertexFormat() {
+		return this.vertexFormat;
 	}
 }
@@ -1,18 +1,152 @@
 package renderer;
 
+import components.Sprite;
 import components.SpriteRenderer;
+import glengine.Camera;
 import glengine.GameObject;
+import glengine.Transform;
+import glengine.Window;
+import org.joml.Vector4f;
+import util.AssetPool;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 public class Renderer {
 	private final int MAX_BATCH_SIZE = 1000;
-	private final List<RenderBatch> batches;
+	private final TreeMap<Integer, Layer> layers;
+	private final Map<SpriteRenderer, SpriteBatch> owners;
+	private final Map<SpriteRenderer, ChunkListener> chunkListeners;
+	private final List<SpriteRenderer> misplaced = new ArrayList<>();
+	private boolean compactionPending;
+	private UploadMode uploadMode;
+	private VertexFormat vertexFormat = VertexFormat.STANDARD;
+	private RenderBackend backend = RenderBackend.BATCHED;
+	private int arrayLayerWidth, arrayLayerHeight;
+	private TextureArray textureArray;
+	private CullingMode cullingMode = CullingMode.NONE;
+	private final Vector4f viewBounds = new Vector4f();
+	private float chunkSize = 32.0f * 32.0f;
+	private float interpolation = 1.0f;
+	private boolean spriteStore;
 
 	public Renderer() {
-		this.batches = new ArrayList<>();
+		this(UploadMode.SUB_DATA);
+	}
+
+	public Renderer(UploadMode uploadMode) {
+		this.layers = new TreeMap<>();
+		this.owners = new HashMap<>();
+		this.chunkListeners = new HashMap<>();
+		this.uploadMode = uploadMode;
+		AssetPool.addRenderer(this);
+	}
+
+	/**
+	 * Sets the way the batches created from now on upload their vertices. Batches that already
+	 * exist keep their mode.
+	 *
+	 * @param uploadMode The upload mode of the new batches.
+	 */
+	public void setUploadMode(UploadMode uploadMode) {
+		this.uploadMode = uploadMode;
+	}
+
+	/**
+	 * Sets the vertex layout of the batches created from now on. {@link VertexFormat#PACKED} takes
+	 * 20 bytes per vertex instead of 36, but only supports texture coordinates in [0, 1].
+	 *
+	 * @param vertexFormat The vertex format of the new batches.
+	 */
+	public void setVertexFormat(VertexFormat vertexFormat) {
+		this.vertexFormat = vertexFormat;
+	}
+
+	/**
+	 * Sets the kind of batches created from now on. Batches of both backends can live in the same
+	 * renderer, they are drawn in z-index order either way.
+	 *
+	 * @param backend The backend of the new batches.
+	 */
+	public void setBackend(RenderBackend backend) {
+		this.backend = backend;
+	}
+
+	/**
+	 * Makes the batches created from now on share a texture array whose layers have the given
+	 * size. Every texture up to that size is then sampled from the array, so batches are only
+	 * limited by their number of sprites; bigger textures still take one of the 8 slots of a batch.
+	 *
+	 * @param layerWidth  The width of a layer, usually the width of the largest spritesheet.
+	 * @param layerHeight The height of a layer, usually the height of the largest spritesheet.
+	 */
+	public void useTextureArray(int layerWidth, int layerHeight) {
+		this.arrayLayerWidth = layerWidth;
+		this.arrayLayerHeight = layerHeight;
+		this.textureArray = null;
+	}
+
+	/**
+	 * Sets how the batches outside the view of the camera are left out of the draw calls
+	 *
+	 * @param cullingMode The culling mode, {@link CullingMode#NONE} to draw everything.
+	 */
+	public void setCullingMode(CullingMode cullingMode) {
+		this.cullingMode = cullingMode;
+	}
+
+	/**
+	 * Sets the side, in world units, of the square chunks static sprites are grouped in. Sprites
+	 * already in a chunk stay where they are until they move.
+	 *
+	 * @param chunkSize The size of a chunk, 32 tiles of 32 units by default.
+	 */
+	public void setChunkSize(float chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Makes the batches created from now on keep their sprites in a {@link SpriteStore}: parallel
+	 * arrays of positions, sizes, colors and texture coordinates that the vertices are built from
+	 * in a single linear pass. Batches that already exist keep their storage.
+	 *
+	 * @param enabled True to use a sprite store in new batches.
+	 */
+	public void setSpriteStore(boolean enabled) {
+		this.spriteStore = enabled;
+	}
+
+	/**
+	 * Sets how far between the last two simulation steps the next frame is drawn
+	 *
+	 * @param alpha The interpolation factor given by the fixed timestep, 1 to draw the current
+	 *              state of the transforms.
+	 */
+	public void setInterpolation(float alpha) {
+		this.interpolation = alpha;
+	}
+
+	/**
+	 * Returns the backend used for new batches
+	 *
+	 * @return The backend of the renderer.
+	 */
+	public RenderBackend backend() {
+		return this.backend;
+	}
+
+	/**
+	 * Returns the upload mode used for new batches
+	 *
+	 * @return The upload mode of the renderer.
+	 */
+	public UploadMode uploadMode() {
+		return this.uploadMode;
 	}
 
 	/**
@@ -28,20 +162,73 @@ public class Renderer {
 	}
 
 	/**
-	 * If the sprite's zIndex is different from the zIndex of the last batch, create a new batch. If
-	 * the sprite's texture is already in the batch, add it to the batch. If the batch is full,
-	 * create a new batch
+	 * Looks up the layer of batches of the sprite's zIndex, creating it if needed. A static sprite
+	 * goes to the batches of the chunk its position falls in, any other sprite to the dynamic
+	 * batches of the layer. The transform of a static sprite is watched, so that the sprite
+	 * follows when it is moved into another chunk.
 	 *
 	 * @param sprite The sprite to add to the batch.
 	 */
 	private void add(SpriteRenderer sprite) {
-		boolean added = false;
 		int spriteZIndex = sprite.gameObject.zIndex();
-		for (RenderBatch batch : batches) {
-			if (batch.hasRoom() && batch.zIndex() == spriteZIndex) {
+		Layer layer = layers.computeIfAbsent(spriteZIndex, z -> new Layer());
+		if (!sprite.gameObject.isStatic()) {
+			add(sprite, layer.batches, spriteZIndex);
+			return;
+		}
+
+		Transform transform = sprite.gameObject.transform;
+		int chunkX = chunkX(transform);
+		int chunkY = chunkY(transform);
+		long chunkKey = Chunk.key(chunkX, chunkY);
+		Chunk chunk = layer.chunks.computeIfAbsent(chunkKey, key -> new Chunk(chunkX, chunkY, chunkSize));
+		add(sprite, chunk.batches, spriteZIndex);
+
+		ChunkListener listener = chunkListeners.get(sprite);
+		if (listener == null) {
+			listener = new ChunkListener(sprite);
+			chunkListeners.put(sprite, listener);
+			transform.addListener(listener);
+		}
+		listener.chunkKey = chunkKey;
+	}
+
+	/**
+	 * Returns the horizontal index of the chunk the given position falls in
+	 *
+	 * @param transform The transform of a static sprite.
+	 * @return The index of the chunk.
+	 */
+	private int chunkX(Transform transform) {
+		return (int) Math.floor(transform.position.x / chunkSize);
+	}
+
+	/**
+	 * Returns the vertical index of the chunk the given position falls in
+	 *
+	 * @param transform The transform of a static sprite.
+	 * @return The index of the chunk.
+	 */
+	private int chunkY(Transform transform) {
+		return (int) Math.floor(transform.position.y / chunkSize);
+	}
+
+	/**
+	 * If the sprite's texture is already in one of the batches, or the batch has texture room, add
+	 * it to the batch. If every batch is full, create a new batch in the list
+	 *
+	 * @param sprite  The sprite to add to the batch.
+	 * @param batches The batches of a layer or of a chunk.
+	 * @param zIndex  The z-index of the batches.
+	 */
+	private void add(SpriteRenderer sprite, List<SpriteBatch> batches, int zIndex) {
+		boolean added = false;
+		for (SpriteBatch batch : batches) {
+			if (batch.hasRoom()) {
 				Texture tex = sprite.getTexture();
 				if (tex == null || (batch.hasTexture(tex) || batch.hasTextureRoom())) {
 					batch.addSprite(sprite);
+					owners.put(sprite, batch);
 					added = true;
 					break;
 				}
@@ -49,20 +236,332 @@ public class Renderer {
 		}
 
 		if (!added) {
-			RenderBatch newBatch = new RenderBatch(MAX_BATCH_SIZE, spriteZIndex);
+			SpriteBatch newBatch = createBatch(zIndex);
 			newBatch.start();
 			batches.add(newBatch);
 			newBatch.addSprite(sprite);
-			Collections.sort(batches);
+			owners.put(sprite, newBatch);
+		}
+	}
+
+	/**
+	 * Moves the sprite of the given GameObject to a batch of its new zIndex. The sprite leaves its
+	 * batch in constant time and the new layer is found in the z-ordered map, so no batch list is
+	 * sorted again.
+	 *
+	 * @param go The GameObject whose zIndex changed.
+	 */
+	public void updateZIndex(GameObject go) {
+		SpriteRenderer spr = go.getComponent(SpriteRenderer.class);
+		if (spr == null) {
+			return;
+		}
+
+		SpriteBatch batch = owners.get(spr);
+		if (batch != null && batch.zIndex() != go.zIndex()) {
+			remove(spr);
+			add(spr);
+		}
+	}
+
+	/**
+	 * Moves the sprite of the given GameObject between the chunks of static sprites and the
+	 * dynamic batches after its static flag changed
+	 *
+	 * @param go The GameObject whose static flag changed.
+	 */
+	public void updateStatic(GameObject go) {
+		SpriteRenderer spr = go.getComponent(SpriteRenderer.class);
+		if (spr != null && owners.containsKey(spr)) {
+			remove(spr);
+			add(spr);
+		}
+	}
+
+	/**
+	 * Stops drawing the sprite of the given GameObject
+	 *
+	 * @param go The GameObject to remove.
+	 */
+	public void remove(GameObject go) {
+		SpriteRenderer spr = go.getComponent(SpriteRenderer.class);
+		if (spr != null) {
+			remove(spr);
 		}
 	}
 
 	/**
-	 * For each batch, render the batch
+	 * Removes a sprite from its batch in constant time. Batches left under-filled are merged with
+	 * their neighbours over the next frames.
+	 *
+	 * @param sprite The sprite to remove.
+	 */
+	public void remove(SpriteRenderer sprite) {
+		ChunkListener listener = chunkListeners.remove(sprite);
+		if (listener != null) {
+			sprite.gameObject.transform.removeListener(listener);
+		}
+		detach(sprite);
+	}
+
+	/**
+	 * Marks dirty the sprite renderers drawing one of the given sprites, after the sprites were
+	 * changed in place, like when they are moved onto a texture atlas
+	 *
+	 * @param sprites The sprites that changed.
+	 */
+	public void spritesChanged(Set<Sprite> sprites) {
+		for (SpriteRenderer spr : owners.keySet()) {
+			if (sprites.contains(spr.getSprite())) {
+				spr.markDirty();
+			}
+		}
+	}
+
+	/**
+	 * Takes a sprite out of its batch, leaving the watch on its transform in place
+	 *
+	 * @param sprite The sprite to take out.
+	 */
+	private void detach(SpriteRenderer sprite) {
+		SpriteBatch batch = owners.remove(sprite);
+		if (batch != null) {
+			batch.removeSprite(sprite);
+			compactionPending = true;
+		}
+	}
+
+	/**
+	 * Does one step of compaction: an empty batch is destroyed, or an under-filled batch is merged
+	 * into another batch of the same layer or chunk that can take all its sprites. Only one batch
+	 * is merged per frame so that despawning many entities at once doesn't cause a spike.
+	 */
+	private void compact() {
+		Iterator<Layer> layerIterator = layers.values().iterator();
+		while (layerIterator.hasNext()) {
+			Layer layer = layerIterator.next();
+			boolean compacted = compact(layer.batches);
+			Iterator<Chunk> chunkIterator = layer.chunks.values().iterator();
+			while (!compacted && chunkIterator.hasNext()) {
+				Chunk chunk = chunkIterator.next();
+				compacted = compact(chunk.batches);
+				if (chunk.batches.isEmpty()) {
+					chunkIterator.remove();
+				}
+			}
+
+			if (layer.batches.isEmpty() && layer.chunks.isEmpty()) {
+				layerIterator.remove();
+			}
+			if (compacted) {
+				return;
+			}
+		}
+		compactionPending = false;
+	}
+
+	/**
+	 * Does one step of compaction on a list of batches
+	 *
+	 * @param batches The batches of a layer or of a chunk.
+	 * @return True if a batch was destroyed or merged.
+	 */
+	private boolean compact(List<SpriteBatch> batches) {
+		for (int i = 0; i < batches.size(); i++) {
+			SpriteBatch batch = batches.get(i);
+			if (batch.size() * 2 >= batch.capacity()) {
+				continue;
+			}
+
+			if (batch.size() == 0) {
+				batches.remove(i).destroy();
+				return true;
+			}
+			for (SpriteBatch target : batches) {
+				if (target.size() >= batch.size() && target.canMerge(batch)) {
+					for (SpriteRenderer moved : target.merge(batch)) {
+						owners.put(moved, target);
+					}
+					batches.remove(i).destroy();
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates an empty batch of the current backend
+	 *
+	 * @param zIndex The z-index of the sprites of the batch.
+	 * @return The new batch, not started yet.
+	 */
+	private SpriteBatch createBatch(int zIndex) {
+		SpriteBatch batch;
+		switch (backend) {
+			case INSTANCED:
+				batch = new InstancedRenderBatch(MAX_BATCH_SIZE, zIndex, uploadMode);
+				break;
+			case BATCHED:
+			default:
+				batch = new RenderBatch(MAX_BATCH_SIZE, zIndex, uploadMode, vertexFormat);
+				break;
+		}
+
+		if (arrayLayerWidth > 0 && arrayLayerHeight > 0) {
+			if (textureArray == null) {
+				textureArray = new TextureArray(arrayLayerWidth, arrayLayerHeight);
+			}
+			batch.setTextureArray(textureArray);
+		}
+		if (spriteStore) {
+			batch.useSpriteStore();
+		}
+		return batch;
+	}
+
+	/**
+	 * Forgets the GL state left by the previous frame, which the ImGui layer changed, and updates
+	 * the camera uniform buffer shared by the shaders. Then for each layer, render the chunks of
+	 * static sprites seen by the camera, then the dynamic batches. When culling is on, the dynamic
+	 * batches whose bounds lie outside the view of the camera are only refreshed, not drawn.
+	 * Sprites whose texture no longer fits their batch are moved to another batch afterwards.
 	 */
 	public void render() {
-		for (RenderBatch batch : batches) {
-			batch.render();
+		render(Window.getScene().camera());
+	}
+
+	/**
+	 * Renders the sprites as seen by the given camera, like {@link #render()}, for scenes that
+	 * aren't the current scene of the window
+	 *
+	 * @param camera The camera to draw from.
+	 */
+	public void render(Camera camera) {
+		if (compactionPending) {
+			compact();
+		}
+		GLState.invalidate();
+		camera.updateUniformBuffer();
+		camera.getViewBounds(viewBounds);
+		for (Layer layer : layers.values()) {
+			for (Chunk chunk : layer.chunks.values()) {
+				if (chunk.near(viewBounds)) {
+					for (SpriteBatch batch : chunk.batches) {
+						render(batch);
+					}
+				}
+			}
+			for (SpriteBatch batch : layer.batches) {
+				if (cullingMode == CullingMode.NONE) {
+					batch.setInterpolation(interpolation);
+					batch.refresh();
+					batch.drainMisplaced(misplaced);
+					batch.render();
+				} else {
+					render(batch);
+				}
+			}
+		}
+		moveMisplaced();
+	}
+
+	/**
+	 * Moves the sprites whose new texture found no free slot in their batch to a batch that has
+	 * room for it, the same way a new sprite is placed. It is done once the frame is drawn, so that
+	 * no batch list changes while it is iterated.
+	 */
+	private void moveMisplaced() {
+		for (int i = 0; i < misplaced.size(); i++) {
+			SpriteRenderer sprite = misplaced.get(i);
+			if (owners.containsKey(sprite)) {
+				detach(sprite);
+				add(sprite);
+			}
+		}
+		misplaced.clear();
+	}
+
+	/**
+	 * Refreshes the batch and draws it if its bounds touch the view of the camera
+	 *
+	 * @param batch The batch to render.
+	 */
+	private void render(SpriteBatch batch) {
+		batch.setInterpolation(interpolation);
+		batch.refresh();
+		batch.drainMisplaced(misplaced);
+		if (batch.intersects(viewBounds)) {
+			batch.render(cullingMode == CullingMode.SPRITE ? viewBounds : null);
+		}
+	}
+
+	/**
+	 * Watches the transform of a static sprite and moves the sprite to the batches of its new
+	 * chunk when its position leaves the chunk it was added to. The listener stays registered
+	 * while the sprite moves, it is only removed when the sprite leaves the renderer.
+	 */
+	private final class ChunkListener implements Transform.Listener {
+		private final SpriteRenderer sprite;
+		private long chunkKey;
+
+		private ChunkListener(SpriteRenderer sprite) {
+			this.sprite = sprite;
+		}
+
+		@Override
+		public void transformChanged(Transform transform) {
+			if (Chunk.key(chunkX(transform), chunkY(transform)) != chunkKey && owners.containsKey(sprite)) {
+				detach(sprite);
+				add(sprite);
+			}
+		}
+	}
+
+	/**
+	 * The batches of one z-index: the dynamic ones and the chunks of static sprites
+	 */
+	private static class Layer {
+		private final List<SpriteBatch> batches = new ArrayList<>();
+		private final Map<Long, Chunk> chunks = new HashMap<>();
+	}
+
+	/**
+	 * A square cell of the world holding the static sprites whose position falls in it. The
+	 * batches of a chunk keep their vertices in their own buffer, so nothing is uploaded until one
+	 * of its sprites changes, and the chunk is skipped entirely while it is out of view.
+	 */
+	private static class Chunk {
+		private final List<SpriteBatch> batches = new ArrayList<>();
+		private final float minX, minY, size;
+
+		private Chunk(int x, int y, float size) {
+			this.minX = x * size;
+			this.minY = y * size;
+			this.size = size;
+		}
+
+		/**
+		 * Returns true if the cell, widened by a chunk on every side, touches the given area.
+		 * Sprites may overhang their chunk, the exact test is left to the bounds of the batches.
+		 *
+		 * @param area A world space rectangle, as (minX, minY, maxX, maxY).
+		 * @return A boolean value.
+		 */
+		private boolean near(Vector4f area) {
+			return minX - size <= area.z && minX + 2 * size >= area.x
+					&& minY - size <= area.w && minY + 2 * size >= area.y;
+		}
+
+		/**
+		 * Packs the coordinates of a chunk into a map key
+		 *
+		 * @param x The horizontal index of the chunk.
+		 * @param y The vertical index of the chunk.
+		 * @return The key of the chunk.
+		 */
+		private static long key(int x, int y) {
+			return ((long) x << 32) | (y & 0xFFFFFFFFL);
 		}
 	}
 }
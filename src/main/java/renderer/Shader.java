@@ -3,26 +3,51 @@ package renderer;
 import org.joml.*;
 import org.lwjgl.BufferUtils;
 
+import glengine.Camera;
+
 import javax.print.DocFlavor;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
 
 import static org.lwjgl.opengl.GL11.GL_FALSE;
+import static org.lwjgl.opengl.GL11.GL_RENDERER;
+import static org.lwjgl.opengl.GL11.GL_VENDOR;
+import static org.lwjgl.opengl.GL11.GL_VERSION;
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL11.glGetString;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL20.glGetShaderInfoLog;
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
+import static org.lwjgl.opengl.GL31.glGetUniformBlockIndex;
+import static org.lwjgl.opengl.GL31.glUniformBlockBinding;
+import static org.lwjgl.opengl.GL41.*;
 
 public class Shader {
 
 	private static final String QT = "'", ERR = "ERROR: ", ERR2 = ERR + QT;
-	private static final String SPC = "'\n\t", LEND = "\r\n";
+	private static final String SPC = "'\n\t", LEND = "\n";
 	private static final String SCF = "shader compilation failed.";
 	private static final String TYP = "#type", VRT = "vertex", FRG = "fragment";
 	private static final String RNG = "a-z", UNT = "Unexpected token '";
 	private static final boolean NRM = false;
+	private static Path binaryCache = Paths.get("cache", "shaders");
 	private int shaderProgramID;
-	private boolean beingUsed = NRM;
+
+	private final Map<String, Uniform> uniforms = new HashMap<>();
+	private final FloatBuffer scratch = BufferUtils.createFloatBuffer(16);
 
 	private String vertexSource;
 	private String fragmentSource;
@@ -64,7 +89,26 @@ public class Shader {
 		}
 	}
 
+	/**
+	 * Sets the directory the linked programs are saved to and loaded from
+	 *
+	 * @param directory The cache directory, or null to always compile from source.
+	 */
+	public static void setBinaryCache(Path directory) {
+		Shader.binaryCache = directory;
+	}
+
+	/**
+	 * Loads the program from the binary cache when a binary saved by the same driver for the same
+	 * source exists, otherwise compiles and links the source and saves the result for next time
+	 */
 	public void compile() {
+		Path binaryFile = binaryFile();
+		if (binaryFile != null && loadBinary(binaryFile)) {
+			setupProgram();
+			return;
+		}
+
 		int vertexID, fragmentID;
 
 		vertexID = glCreateShader(GL_VERTEX_SHADER);
@@ -94,6 +138,9 @@ public class Shader {
 		shaderProgramID = glCreateProgram();
 		glAttachShader(shaderProgramID, vertexID);
 		glAttachShader(shaderProgramID, fragmentID);
+		if (binaryFile != null) {
+			glProgramParameteri(shaderProgramID, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+		}
 		glLinkProgram(shaderProgramID);
 
 		success = glGetProgrami(shaderProgramID, GL_LINK_STATUS);
@@ -102,6 +149,183 @@ public class Shader {
 			System.out.println(ERR2 + filepath + SPC + "Linking of shaders failed.");
 			System.out.println(glGetProgramInfoLog(shaderProgramID, len));
 			assert NRM : "";
+		} else if (binaryFile != null) {
+			saveBinary(binaryFile);
+		}
+
+		setupProgram();
+	}
+
+	/**
+	 * Caches the uniforms of the linked program and binds its camera block
+	 */
+	private void setupProgram() {
+		cacheUniforms();
+		int cameraBlock = glGetUniformBlockIndex(shaderProgramID, Camera.UNIFORM_BLOCK);
+		if (cameraBlock != GL_INVALID_INDEX) {
+			glUniformBlockBinding(shaderProgramID, cameraBlock, Camera.UNIFORM_BINDING);
+		}
+	}
+
+	/**
+	 * Returns the cache file of this program. Its name is a SHA-256 of both sources and of the
+	 * vendor, renderer and version of the driver, so a driver update or an edited shader never
+	 * picks up a stale binary.
+	 *
+	 * @return The path of the binary, or null if the cache is disabled or unsupported.
+	 */
+	private Path binaryFile() {
+		GLCapabilities caps = GL.getCapabilities();
+		if (binaryCache == null || vertexSource == null || fragmentSource == null
+				|| !(caps.OpenGL41 || caps.GL_ARB_get_program_binary)
+				|| glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) == 0) {
+			return null;
+		}
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String part : new String[]{vertexSource, fragmentSource,
+					glGetString(GL_VENDOR), glGetString(GL_RENDERER), glGetString(GL_VERSION)}) {
+				digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+			}
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest.digest()) {
+				name.append(String.format("%02x", b));
+			}
+			return binaryCache.resolve(name.append(".bin").toString());
+		} catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the program from a cached binary. The file holds the binary format as an int
+	 * followed by the binary itself. A binary the driver rejects is deleted.
+	 *
+	 * @param binaryFile The cache file of the program.
+	 * @return True if the program was loaded and linked.
+	 */
+	private boolean loadBinary(Path binaryFile) {
+		if (!Files.isRegularFile(binaryFile)) {
+			return NRM;
+		}
+
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(binaryFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return NRM;
+		}
+		if (bytes.length <= Integer.BYTES) {
+			return NRM;
+		}
+
+		int format = ByteBuffer.wrap(bytes).getInt();
+		ByteBuffer binary = BufferUtils.createByteBuffer(bytes.length - Integer.BYTES);
+		binary.put(bytes, Integer.BYTES, binary.capacity()).flip();
+		shaderProgramID = glCreateProgram();
+		glProgramBinary(shaderProgramID, format, binary);
+		if (glGetProgrami(shaderProgramID, GL_LINK_STATUS) == GL_FALSE) {
+			GLState.deleteProgram(shaderProgramID);
+			shaderProgramID = 0;
+			try {
+				Files.deleteIfExists(binaryFile);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return NRM;
+		}
+		return true;
+	}
+
+	/**
+	 * Saves the linked program to the cache. Failing to save only means the next launch compiles
+	 * again.
+	 *
+	 * @param binaryFile The cache file of the program.
+	 */
+	private void saveBinary(Path binaryFile) {
+		int length = glGetProgrami(shaderProgramID, GL_PROGRAM_BINARY_LENGTH);
+		if (length <= 0) {
+			return;
+		}
+
+		ByteBuffer binary = BufferUtils.createByteBuffer(length);
+		IntBuffer written = BufferUtils.createIntBuffer(1);
+		IntBuffer format = BufferUtils.createIntBuffer(1);
+		glGetProgramBinary(shaderProgramID, written, format, binary);
+		binary.limit(written.get(0));
+
+		byte[] bytes = new byte[Integer.BYTES + written.get(0)];
+		ByteBuffer.wrap(bytes).putInt(format.get(0)).put(binary);
+		try {
+			Files.createDirectories(binaryFile.getParent());
+			Files.write(binaryFile, bytes);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Looks up every active uniform of the linked program once, so that the upload methods never
+	 * query a location by name. Arrays are stored under their plain name, without the "[0]" the
+	 * driver appends.
+	 */
+	private void cacheUniforms() {
+		uniforms.clear();
+		IntBuffer size = BufferUtils.createIntBuffer(1);
+		IntBuffer type = BufferUtils.createIntBuffer(1);
+		int count = glGetProgrami(shaderProgramID, GL_ACTIVE_UNIFORMS);
+		for (int i = 0; i < count; i++) {
+			String name = glGetActiveUniform(shaderProgramID, i, size, type);
+			if (name.endsWith("[0]")) {
+				name = name.substring(0, name.length() - 3);
+			}
+			int location = glGetUniformLocation(shaderProgramID, name);
+			if (location >= 0) {
+				uniforms.put(name, new Uniform(location, size.get(0) * components(type.get(0))));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of scalars a uniform of the given type is made of
+	 *
+	 * @param type The type returned by glGetActiveUniform.
+	 * @return The number of components.
+	 */
+	private static int components(int type) {
+		switch (type) {
+			case GL_FLOAT_VEC2:
+			case GL_INT_VEC2:
+				return 2;
+			case GL_FLOAT_VEC3:
+			case GL_INT_VEC3:
+				return 3;
+			case GL_FLOAT_VEC4:
+			case GL_INT_VEC4:
+			case GL_FLOAT_MAT2:
+				return 4;
+			case GL_FLOAT_MAT3:
+				return 9;
+			case GL_FLOAT_MAT4:
+				return 16;
+			default:
+				return 1;
+		}
+	}
+
+	/**
+	 * Deletes the program from the GPU
+	 */
+	public void destroy() {
+		if (shaderProgramID != 0) {
+			GLState.deleteProgram(shaderProgramID);
+			shaderProgramID = 0;
+			uniforms.clear();
 		}
 	}
 
@@ -109,18 +333,14 @@ public class Shader {
 	 * If the shader is not being used, then use it
 	 */
 	public void use() {
-		if (!beingUsed) {
-			glUseProgram(shaderProgramID);
-			beingUsed = true;
-		}
+		GLState.useProgram(shaderProgramID);
 	}
 
 	/**
 	 * Detach the shader program from the OpenGL pipeline
 	 */
 	public void detach() {
-		glUseProgram(0);
-		beingUsed = NRM;
+		GLState.useProgram(0);
 	}
 
 	/**
@@ -130,11 +350,15 @@ public class Shader {
 	 * @param mat4    The matrix to upload.
 	 */
 	public void uploadMat4f(String varName, Matrix4f mat4) {
-		int varLocation = glGetUniformLocation(shaderProgramID, varName);
+		Uniform uniform = uniforms.get(varName);
+		if (uniform == null) {
+			return;
+		}
 		use();
-		FloatBuffer matBuffer = BufferUtils.createFloatBuffer(16);
-		mat4.get(matBuffer);
-		glUniformMatrix4fv(varLocation, NRM, matBuffer);
+		mat4.get(scratch);
+		if (uniform.update(scratch, 16)) {
+			glUniformMatrix4fv(uniform.location, NRM, scratch);
+		}
 	}
 
 	/**
@@ -144,11 +368,17 @@ public class Shader {
 	 * @param mat3    The matrix to upload.
 	 */
 	public void uploadMat3f(String varName, Matrix3f mat3) {
-		int varLocation = glGetUniformLocation(shaderProgramID, varName);
+		Uniform uniform = uniforms.get(varName);
+		if (uniform == null) {
+			return;
+		}
 		use();
-		FloatBuffer matBuffer = BufferUtils.createFloatBuffer(9);
-		mat3.get(matBuffer);
-		glUniformMatrix3fv(varLocation, NRM, matBuffer);
+		scratch.limit(9);
+		mat3.get(scratch);
+		if (uniform.update(scratch, 9)) {
+			glUniformMatrix3fv(uniform.location, NRM, scratch);
+		}
+		scratch.clear();
 	}
 
 	/**
@@ -158,9 +388,18 @@ public class Shader {
 	 * @param vec     The vector to upload.
 	 */
 	public void uploadVec4f(String varName, Vector4f vec) {
-		int varLocation = glGetUniformLocation(shaderProgramID, varName);
+		Uniform uniform = uniforms.get(varName);
+		if (uniform == null) {
+			return;
+		}
 		use();
-		glUniform4f(varLocation, vec.x, vec.y, vec.z, vec.w);
+		scratch.put(0, vec.x);
+		scratch.put(1, vec.y);
+		scratch.put(2, vec.z);
+		scratch.put(3, vec.w);
+		if (uniform.update(scratch, 4)) {
+			glUniform4f(uniform.location, vec.x, vec.y, vec.z, vec.w);
+		}
 	}
 
 	/**
@@ -170,9 +409,17 @@ public class Shader {
 	 * @param vec     The vector to upload.
 	 */
 	public void uploadVec3f(String varName, Vector3f vec) {
-		int varLocation = glGetUniformLocation(shaderProgramID, varName);
+		Uniform uniform = uniforms.get(varName);
+		if (uniform == null) {
+			return;
+		}
 		use();
-		glUniform3f(varLocation, vec.x, vec.y, vec.z);
+		scratch.put(0, vec.x);
+		scratch.put(1, vec.y);
+		scratch.put(2, vec.z);
+		if (uniform.update(scratch, 3)) {
+			glUniform3f(uniform.location, vec.x, vec.y, vec.z);
+		}
 	}
 
 	/**
@@ -182,9 +429,16 @@ public class Shader {
 	 * @param vec     The vector to upload.
 	 */
 	public void uploadVec2f(String varName, Vector2f vec) {
-		int varLocation = glGetUniformLocation(shaderProgramID, varName);
+		Uniform uniform = uniforms.get(varName);
+		if (uniform == null) {
+			return;
+		}
 		use();
-		glUniform2f(varLocation, vec.x, vec.y);
+		scratch.put(0, vec.x);
+		scratch.put(1, vec.y);
+		if (uniform.update(scratch, 2)) {
+			glUniform2f(uniform.location, vec.x, vec.y);
+		}
 	}
 
 	/**
@@ -194,9 +448,15 @@ public class Shader {
 	 * @param val     The value to be uploaded.
 	 */
 	public void uploadFloat(String varName, float val) {
-		int varLocation = glGetUniformLocation(shaderProgramID, varName);
+		Uniform uniform = uniforms.get(varName);
+		if (uniform == null) {
+			return;
+		}
 		use();
-		glUniform1f(varLocation, val);
+		scratch.put(0, val);
+		if (uniform.update(scratch, 1)) {
+			glUniform1f(uniform.location, val);
+		}
 	}
 
 	/**
@@ -207,9 +467,14 @@ public class Shader {
 	 * @param val     The value to be uploaded.
 	 */
 	public void uploadInt(String varName, int val) {
-		int varLocation = glGetUniformLocation(shaderProgramID, varName);
+		Uniform uniform = uniforms.get(varName);
+		if (uniform == null) {
+			return;
+		}
 		use();
-		glUniform1i(varLocation, val);
+		if (uniform.update(val)) {
+			glUniform1i(uniform.location, val);
+		}
 	}
 
 	/**
@@ -219,9 +484,14 @@ public class Shader {
 	 * @param slot    The texture slot to bind the texture to.
 	 */
 	public void uploadTexture(String varName, int slot) {
-		int varLocation = glGetUniformLocation(shaderProgramID, varName);
+		Uniform uniform = uniforms.get(varName);
+		if (uniform == null) {
+			return;
+		}
 		use();
-		glUniform1i(varLocation, slot);
+		if (uniform.update(slot)) {
+			glUniform1i(uniform.location, slot);
+		}
 	}
 
 	/**
@@ -231,8 +501,87 @@ public class Shader {
 	 * @param array   The array to be uploaded.
 	 */
 	public void uploadIntArray(String varName, int[] array) {
-		int varLocation = glGetUniformLocation(shaderProgramID, varName);
+		Uniform uniform = uniforms.get(varName);
+		if (uniform == null) {
+			return;
+		}
 		use();
-		glUniform1iv(varLocation, array);
+		if (uniform.update(array)) {
+			glUniform1iv(uniform.location, array);
+		}
+	}
+
+	/**
+	 * The location of an active uniform and the last value uploaded to it. The value belongs to
+	 * the program, so it stays valid while other programs are in use.
+	 */
+	private static class Uniform {
+		private final int location;
+		private final float[] floats;
+		private final int[] ints;
+		private boolean uploaded;
+
+		private Uniform(int location, int components) {
+			this.location = location;
+			this.floats = new float[components];
+			this.ints = new int[components];
+		}
+
+		/**
+		 * Stores the first values of the buffer if they differ from the last upload
+		 *
+		 * @param values The buffer holding the new value.
+		 * @param count  The number of floats of the value.
+		 * @return True if the value has to be uploaded.
+		 */
+		private boolean update(FloatBuffer values, int count) {
+			if (count > floats.length) {
+				return true;
+			}
+			boolean changed = !uploaded;
+			for (int i = 0; i < count; i++) {
+				float value = values.get(i);
+				if (floats[i] != value) {
+					floats[i] = value;
+					changed = true;
+				}
+			}
+			uploaded = true;
+			return changed;
+		}
+
+		/**
+		 * Stores the value if it differs from the last upload
+		 *
+		 * @param value The new value.
+		 * @return True if the value has to be uploaded.
+		 */
+		private boolean update(int value) {
+			boolean changed = !uploaded || ints[0] != value;
+			ints[0] = value;
+			uploaded = true;
+			return changed;
+		}
+
+		/**
+		 * Stores the values of the array if they differ from the last upload
+		 *
+		 * @param values The new values.
+		 * @return True if the array has to be uploaded.
+		 */
+		private boolean update(int[] values) {
+			if (values.length > ints.length) {
+				return true;
+			}
+			boolean changed = !uploaded;
+			for (int i = 0; i < values.length; i++) {
+				if (ints[i] != values[i]) {
+					ints[i] = values[i];
+					changed = true;
+				}
+			}
+			uploaded = true;
+			return changed;
+		}
 	}
 }
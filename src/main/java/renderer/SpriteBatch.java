@@ -0,0 +1,875 @@
+package renderer;
+
+import components.SpriteRenderer;
+import glengine.Transform;
+import org.joml.Vector2f;
+import org.joml.Vector4f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import util.AssetHandle;
+import util.AssetPool;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL44.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL44.glBufferStorage;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+
+/**
+ * A group of sprites drawn with a single draw call. The batch owns the buffer holding the
+ * per-sprite data, keeps track of which sprites changed and sends only those to the GPU, either
+ * with glBufferSubData or through a persistently mapped ring. Subclasses decide how a sprite is
+ * laid out in that buffer and how it is drawn.
+ */
+public abstract class SpriteBatch implements Comparable<SpriteBatch> {
+	private static final boolean NRM = false;
+	private static final int RING_REGIONS = 3;
+	private static final int MAP_FLAGS = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+	private static final long FENCE_TIMEOUT = 1_000_000L;
+	private static final int ARRAY_SLOT = 9;
+
+	protected final SpriteRenderer[] sprites;
+	private final Map<SpriteRenderer, Integer> indices;
+	protected int numSprites;
+	private boolean hasRoom;
+	protected final ByteBuffer spriteData;
+	private final int spriteBytes;
+	private final int[] texSlots = {0, 1, 2, 3, 4, 5, 6, 7, 8};
+
+	protected final List<Texture> textures;
+	private final Map<Texture, Integer> textureUsers;
+	private final Map<Texture, AssetHandle<Texture>> textureHandles;
+	private final Texture[] spriteTextures;
+	private int slotTextures;
+	private final List<SpriteRenderer> misplaced = new ArrayList<>();
+	private int vaoID, vboID;
+	protected final int maxBatchSize;
+	private final Shader shader;
+	private final int zIndex;
+	private TextureArray textureArray;
+
+	private UploadMode uploadMode;
+	private int dirtyMin, dirtyMax;
+	private long mappedAddress;
+	private final long[] fences = new long[RING_REGIONS];
+	private int ringRegion;
+	private final int[] regionDirtyMin = new int[RING_REGIONS];
+	private final int[] regionDirtyMax = new int[RING_REGIONS];
+
+	private final float[] spriteBounds;
+	private final Vector4f bounds = new Vector4f();
+	private boolean boundsStale;
+
+	private float interpolation = 1.0f;
+	protected final Vector2f spritePosition = new Vector2f(), spriteScale = new Vector2f();
+
+	private SpriteStore store;
+	private List<SpriteRenderer> dirtySprites = new ArrayList<>(), refreshing = new ArrayList<>();
+	private int buildMin = Integer.MAX_VALUE, buildMax = -1;
+
+	/**
+	 * @param maxBatchSize The maximum number of sprites of the batch.
+	 * @param zIndex       The z-index shared by all the sprites of the batch.
+	 * @param uploadMode   The way the sprite data is sent to the GPU.
+	 * @param spriteBytes  The number of bytes a single sprite takes in the sprite buffer.
+	 * @param shaderPath   The shader used to draw the batch.
+	 */
+	protected SpriteBatch(int maxBatchSize, int zIndex, UploadMode uploadMode, int spriteBytes, String shaderPath) {
+		this.zIndex = zIndex;
+		this.uploadMode = uploadMode;
+		this.spriteBytes = spriteBytes;
+		shader = AssetPool.getShader(shaderPath);
+		this.sprites = new SpriteRenderer[maxBatchSize];
+		this.indices = new HashMap<>();
+		this.maxBatchSize = maxBatchSize;
+		spriteData = BufferUtils.createByteBuffer(maxBatchSize * spriteBytes);
+		spriteBounds = new float[maxBatchSize * 4];
+		clearDirtyRanges();
+
+		this.numSprites = 0;
+		this.hasRoom = true;
+		this.textures = new ArrayList<>();
+		this.textureUsers = new HashMap<>();
+		this.textureHandles = new HashMap<>();
+		this.spriteTextures = new Texture[maxBatchSize];
+	}
+
+	/**
+	 * Makes the batch store every texture that fits in the given array instead of using one of its
+	 * texture slots. It has to be called before any sprite is added.
+	 *
+	 * @param textureArray The texture array shared by the batches of the renderer.
+	 */
+	public void setTextureArray(TextureArray textureArray) {
+		assert numSprites == 0 : "Error: (SpriteBatch) The texture array must be set on an empty batch.";
+		this.textureArray = textureArray;
+	}
+
+	/**
+	 * Makes the batch gather its sprites into a {@link SpriteStore} and build their data with a
+	 * linear sweep over it, instead of loading every sprite from its objects. It has to be called
+	 * before any sprite is added.
+	 */
+	public void useSpriteStore() {
+		assert numSprites == 0 : "Error: (SpriteBatch) The sprite store must be set on an empty batch.";
+		this.store = new SpriteStore(maxBatchSize);
+	}
+
+	/**
+	 * Creates the vao and the sprite buffer, then lets the subclass describe its attributes
+	 */
+	public void start() {
+		vaoID = glGenVertexArrays();
+		GLState.bindVertexArray(vaoID);
+
+		vboID = glGenBuffers();
+		GLState.bindBuffer(GL_ARRAY_BUFFER, vboID);
+		if (uploadMode == UploadMode.PERSISTENT_MAPPED && !supportsBufferStorage()) {
+			uploadMode = UploadMode.SUB_DATA;
+		}
+		if (uploadMode == UploadMode.PERSISTENT_MAPPED) {
+			long ringBytes = (long) spriteData.capacity() * RING_REGIONS;
+			glBufferStorage(GL_ARRAY_BUFFER, ringBytes, MAP_FLAGS);
+			ByteBuffer mapped = glMapBufferRange(GL_ARRAY_BUFFER, 0, ringBytes, MAP_FLAGS);
+			assert mapped != null : "Error: (SpriteBatch) Could not map the sprite buffer.";
+			mappedAddress = memAddress(mapped);
+		} else {
+			glBufferData(GL_ARRAY_BUFFER, spriteData.capacity(), GL_DYNAMIC_DRAW);
+		}
+
+		setupAttributes(vboID);
+	}
+
+	/**
+	 * Creates the remaining buffers of the batch and describes its vertex attributes. It is called
+	 * with the vao and the sprite buffer bound.
+	 *
+	 * @param spriteBufferID The id of the buffer holding the per-sprite data.
+	 */
+	protected abstract void setupAttributes(int spriteBufferID);
+
+	/**
+	 * Writes the data of the sprite at the given index into {@link #spriteData}
+	 *
+	 * @param index The index of the sprite in the sprites array.
+	 */
+	protected abstract void loadSprite(int index);
+
+	/**
+	 * Writes the data of a range of consecutive sprites into {@link #spriteData}, reading them
+	 * from the sprite store in order
+	 *
+	 * @param store The sprite store of the batch.
+	 * @param from  The index of the first sprite, inclusive.
+	 * @param to    The index of the last sprite, exclusive.
+	 */
+	protected abstract void writeSprites(SpriteStore store, int from, int to);
+
+	/**
+	 * Issues the draw call of a run of consecutive sprites, with the vao and textures already bound
+	 *
+	 * @param firstSprite The index of the first sprite of the buffer region to draw from.
+	 * @param start       The index of the first sprite of the run inside the region.
+	 * @param count       The number of sprites of the run.
+	 */
+	protected abstract void draw(int firstSprite, int start, int count);
+
+	/**
+	 * Returns true if {@link #draw(int, int, int)} can start a run anywhere in the batch. When it
+	 * can't, a batch culled per sprite is drawn whole.
+	 *
+	 * @return A boolean value.
+	 */
+	protected boolean canDrawRuns() {
+		return true;
+	}
+
+	/**
+	 * Adds a sprite to the batch
+	 *
+	 * @param spr The SpriteRenderer that you want to add to the batch.
+	 */
+	public void addSprite(SpriteRenderer spr) {
+		int index = this.numSprites;
+		this.sprites[index] = spr;
+		this.indices.put(spr, index);
+		this.numSprites++;
+		if (!trackTexture(index)) {
+			misplace(spr);
+		}
+
+		spr.setBatch(this);
+		load(index);
+		updateBounds(index);
+		markDirty(index);
+		settle(spr);
+
+		if (numSprites >= this.maxBatchSize) {
+			this.hasRoom = NRM;
+		}
+	}
+
+	/**
+	 * Counts the texture of the sprite at the given index as used by the batch, in place of the
+	 * one it had when it was last loaded. The batch holds a reference to each pooled texture its
+	 * sprites use, so the pool doesn't evict a texture, or give its array layer away, while it is
+	 * drawn. A texture the batch has no sprite of anymore gives its slot back, for the next new
+	 * texture to take. A new texture is only given a slot if one is free; otherwise nothing
+	 * changes and the sprite has to move to another batch.
+	 *
+	 * @param index The index of the sprite in the sprites array.
+	 * @return False if the texture of the sprite needs a slot and the batch has none left.
+	 */
+	private boolean trackTexture(int index) {
+		Texture texture = sprites[index].getTexture();
+		Texture previous = spriteTextures[index];
+		if (texture == previous) {
+			return true;
+		}
+		boolean needsSlot = texture != null && !inTextureArray(texture) && !textures.contains(texture);
+		boolean freesSlot = previous != null && textures.contains(previous)
+				&& Integer.valueOf(1).equals(textureUsers.get(previous));
+		if (needsSlot && !hasTextureRoom() && !freesSlot) {
+			return false;
+		}
+		releaseTexture(previous);
+		spriteTextures[index] = texture;
+		if (texture == null) {
+			return true;
+		}
+
+		Integer users = textureUsers.get(texture);
+		textureUsers.put(texture, users == null ? 1 : users + 1);
+		if (users != null) {
+			return true;
+		}
+		AssetHandle<Texture> handle = AssetPool.retain(texture);
+		if (handle != null) {
+			textureHandles.put(texture, handle);
+		}
+		if (!inTextureArray(texture)) {
+			int freeSlot = textures.indexOf(null);
+			if (freeSlot >= 0) {
+				textures.set(freeSlot, texture);
+			} else {
+				textures.add(texture);
+			}
+			slotTextures++;
+		}
+		return true;
+	}
+
+	/**
+	 * Remembers a sprite whose texture can't get a slot in this batch, for the renderer to move it
+	 *
+	 * @param spr The sprite to move.
+	 */
+	private void misplace(SpriteRenderer spr) {
+		if (!misplaced.contains(spr)) {
+			misplaced.add(spr);
+		}
+	}
+
+	/**
+	 * Hands over the sprites of the batch whose new texture found no free slot. Until they are
+	 * moved, they keep being drawn as they were before their texture changed.
+	 *
+	 * @param into The list the sprites still in this batch are added to.
+	 */
+	public void drainMisplaced(List<SpriteRenderer> into) {
+		for (SpriteRenderer spr : misplaced) {
+			if (indices.containsKey(spr)) {
+				into.add(spr);
+			}
+		}
+		misplaced.clear();
+	}
+
+	/**
+	 * Removes one user of a texture. The slot of a texture left without sprites is emptied, so the
+	 * other textures keep their slots and no sprite has to be loaded again, and the reference the
+	 * batch held on it is given back to the pool.
+	 *
+	 * @param texture The texture a sprite stopped using, may be null.
+	 */
+	private void releaseTexture(Texture texture) {
+		Integer users = texture == null ? null : textureUsers.get(texture);
+		if (users == null) {
+			return;
+		}
+		if (users > 1) {
+			textureUsers.put(texture, users - 1);
+			return;
+		}
+
+		textureUsers.remove(texture);
+		int slot = textures.indexOf(texture);
+		if (slot >= 0) {
+			textures.set(slot, null);
+			slotTextures--;
+			while (!textures.isEmpty() && textures.get(textures.size() - 1) == null) {
+				textures.remove(textures.size() - 1);
+			}
+		}
+		AssetHandle<Texture> handle = textureHandles.remove(texture);
+		if (handle != null) {
+			handle.release();
+		}
+	}
+
+	/**
+	 * Removes a sprite in constant time: the last sprite of the batch is moved into the hole and
+	 * marked dirty, so only its data has to be uploaded again
+	 *
+	 * @param spr The SpriteRenderer to remove.
+	 * @return True if the sprite was in this batch.
+	 */
+	public boolean removeSprite(SpriteRenderer spr) {
+		Integer index = this.indices.remove(spr);
+		if (index == null) {
+			return NRM;
+		}
+
+		spr.setBatch(null);
+		releaseTexture(spriteTextures[index]);
+		int last = this.numSprites - 1;
+		spriteTextures[index] = spriteTextures[last];
+		spriteTextures[last] = null;
+		if (index != last) {
+			SpriteRenderer moved = this.sprites[last];
+			this.sprites[index] = moved;
+			this.indices.put(moved, index);
+			load(index);
+			updateBounds(index);
+			markDirty(index);
+		}
+		this.sprites[last] = null;
+		this.numSprites--;
+		this.hasRoom = true;
+		this.boundsStale = true;
+		return true;
+	}
+
+	/**
+	 * Returns true if all the sprites of the given batch could be moved into this one: same
+	 * z-index, enough free room and enough texture slots for the textures this batch lacks
+	 *
+	 * @param other The batch to merge into this one.
+	 * @return A boolean value.
+	 */
+	public boolean canMerge(SpriteBatch other) {
+		if (other == this || other.zIndex != this.zIndex
+				|| this.numSprites + other.numSprites > this.maxBatchSize) {
+			return NRM;
+		}
+
+		int missing = 0;
+		for (Texture texture : other.textures) {
+			if (texture != null && !hasTexture(texture)) {
+				missing++;
+			}
+		}
+		return this.slotTextures + missing <= 8;
+	}
+
+	/**
+	 * Moves every sprite of the given batch into this one, leaving the other batch empty
+	 *
+	 * @param other A batch this one {@link #canMerge(SpriteBatch) can merge}.
+	 * @return The sprites that were moved.
+	 */
+	public List<SpriteRenderer> merge(SpriteBatch other) {
+		List<SpriteRenderer> moved = new ArrayList<>(other.numSprites);
+		while (other.numSprites > 0) {
+			SpriteRenderer spr = other.sprites[other.numSprites - 1];
+			other.removeSprite(spr);
+			addSprite(spr);
+			moved.add(spr);
+		}
+		return moved;
+	}
+
+	/**
+	 * Releases the GPU buffers of the batch and the references it still holds on textures. The
+	 * batch can't be rendered afterwards.
+	 */
+	public void destroy() {
+		for (AssetHandle<Texture> handle : textureHandles.values()) {
+			handle.release();
+		}
+		textureHandles.clear();
+		for (int i = 0; i < RING_REGIONS; i++) {
+			if (fences[i] != 0) {
+				glDeleteSync(fences[i]);
+				fences[i] = 0;
+			}
+		}
+		GLState.deleteBuffer(vboID);
+		GLState.deleteVertexArray(vaoID);
+		destroyBuffers();
+	}
+
+	/**
+	 * Releases the buffers created by {@link #setupAttributes(int)}
+	 */
+	protected abstract void destroyBuffers();
+
+	/**
+	 * Queues a sprite of the batch whose data changed. Sprites queue themselves when they are
+	 * {@link SpriteRenderer#markDirty() marked dirty}, so the batch never scans its sprites.
+	 *
+	 * @param spr The sprite that changed.
+	 */
+	public void queue(SpriteRenderer spr) {
+		dirtySprites.add(spr);
+	}
+
+	/**
+	 * Reloads the data and the bounds of the sprites queued since the last refresh and widens the
+	 * dirty range. A batch without changes costs nothing here. It is called by the renderer before
+	 * culling, so that a batch out of view still follows its sprites.
+	 */
+	public void refresh() {
+		if (!dirtySprites.isEmpty()) {
+			List<SpriteRenderer> pending = dirtySprites;
+			dirtySprites = refreshing;
+			refreshing = pending;
+			for (int i = 0; i < pending.size(); i++) {
+				SpriteRenderer spr = pending.get(i);
+				Integer index = indices.get(spr);
+				if (index == null || !spr.isDirty()) {
+					continue;
+				}
+				if (!trackTexture(index)) {
+					misplace(spr);
+					continue;
+				}
+				load(index);
+				updateBounds(index);
+				markDirty(index);
+				settle(spr);
+			}
+			pending.clear();
+		}
+		buildStoredSprites();
+	}
+
+	/**
+	 * Marks a freshly loaded sprite clean, unless it is drawn between two simulation steps: then it
+	 * is queued again, to be loaded at the next interpolation factor
+	 *
+	 * @param spr The sprite that was loaded.
+	 */
+	private void settle(SpriteRenderer spr) {
+		spr.setClean();
+		if (spr.gameObject.transform.isInterpolating()) {
+			spr.markDirty();
+		}
+	}
+
+	/**
+	 * Sets how far between the last two simulation steps the sprites are drawn. Sprites whose
+	 * transform changed during the last steps are loaded again on every refresh.
+	 *
+	 * @param alpha The interpolation factor, 1 to draw the current state.
+	 */
+	public void setInterpolation(float alpha) {
+		this.interpolation = alpha;
+	}
+
+	/**
+	 * Loads the sprite at the given index: directly into the sprite data, or into the sprite store
+	 * when the batch has one, to be written by the next {@link #buildStoredSprites() sweep}
+	 *
+	 * @param index The index of the sprite in the sprites array.
+	 */
+	private void load(int index) {
+		if (store == null) {
+			loadSprite(index);
+			return;
+		}
+
+		SpriteRenderer sprite = sprites[index];
+		Texture texture = sprite.getTexture();
+		interpolate(sprite.gameObject.transform);
+		store.set(index, spritePosition, spriteScale, sprite.getColor(), sprite.getTexCoords(),
+				uScale(texture), vScale(texture), textureSlot(texture));
+		buildMin = Math.min(buildMin, index);
+		buildMax = Math.max(buildMax, index);
+	}
+
+	/**
+	 * Writes the sprites gathered into the store since the last sweep in one pass over the
+	 * arrays. The sprites between the changed ones are written again too, which costs less than
+	 * jumping between them.
+	 */
+	private void buildStoredSprites() {
+		if (store == null || buildMin > buildMax) {
+			return;
+		}
+		writeSprites(store, buildMin, Math.min(buildMax + 1, numSprites));
+		buildMin = Integer.MAX_VALUE;
+		buildMax = -1;
+	}
+
+	/**
+	 * Stores the interpolated position and scale of a transform in {@link #spritePosition} and
+	 * {@link #spriteScale}, for {@link #loadSprite(int)}
+	 *
+	 * @param transform The transform of the sprite being loaded.
+	 */
+	protected void interpolate(Transform transform) {
+		transform.interpolatePosition(interpolation, spritePosition);
+		transform.interpolateScale(interpolation, spriteScale);
+	}
+
+	/**
+	 * Draws every sprite of the batch, as of its last {@link #refresh()}
+	 */
+	public void render() {
+		render(null);
+	}
+
+	/**
+	 * Draws the sprites as they were at the last {@link #refresh()}, which the caller must do first
+	 * in the frame: the batch doesn't refresh itself here, so that a batch refreshed for culling
+	 * doesn't load its interpolating sprites twice. Only the data inside the dirty range is sent to
+	 * the GPU, then we bind the vao and let the subclass draw. When a
+	 * visible area is given, only the runs of sprites touching it are drawn. Every bind goes
+	 * through {@link GLState} and nothing is unbound afterwards, so consecutive batches sharing a
+	 * shader or textures only pay for what differs.
+	 *
+	 * @param visibleArea The world space rectangle to draw, as (minX, minY, maxX, maxY), or null to
+	 *                    draw the whole batch.
+	 */
+	public void render(Vector4f visibleArea) {
+		int firstSprite = 0;
+		if (uploadMode == UploadMode.PERSISTENT_MAPPED) {
+			firstSprite = streamSprites();
+		} else if (dirtyMin <= dirtyMax) {
+			uploadDirtyRange();
+		}
+
+		shader.use();
+		for (int i = 0; i < textures.size(); i++) {
+			if (textures.get(i) != null) {
+				textures.get(i).bind(i + 1);
+			}
+		}
+		shader.uploadIntArray("uTextures", texSlots);
+		if (textureArray != null) {
+			textureArray.bind(ARRAY_SLOT);
+		}
+		shader.uploadTexture("uTextureArray", ARRAY_SLOT);
+
+		GLState.bindVertexArray(vaoID);
+
+		if (visibleArea == null || !canDrawRuns()) {
+			draw(firstSprite, 0, numSprites);
+		} else {
+			drawVisibleRuns(firstSprite, visibleArea);
+		}
+		if (uploadMode == UploadMode.PERSISTENT_MAPPED) {
+			fences[ringRegion] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+			ringRegion = (ringRegion + 1) % RING_REGIONS;
+		}
+	}
+
+	/**
+	 * Draws each run of consecutive sprites whose bounds touch the visible area
+	 *
+	 * @param firstSprite The index of the first sprite of the buffer region to draw from.
+	 * @param visibleArea The world space rectangle to draw, as (minX, minY, maxX, maxY).
+	 */
+	private void drawVisibleRuns(int firstSprite, Vector4f visibleArea) {
+		int runStart = -1;
+		for (int i = 0; i < numSprites; i++) {
+			boolean visible = Bounds.touches(spriteBounds, i * 4, visibleArea);
+			if (visible && runStart < 0) {
+				runStart = i;
+			} else if (!visible && runStart >= 0) {
+				draw(firstSprite, runStart, i - runStart);
+				runStart = -1;
+			}
+		}
+		if (runStart >= 0) {
+			draw(firstSprite, runStart, numSprites - runStart);
+		}
+	}
+
+	/**
+	 * Returns true if the bounds of the batch touch the given area. The bounds are recomputed
+	 * here when a sprite was added, moved or removed since the last test.
+	 *
+	 * @param area A world space rectangle, as (minX, minY, maxX, maxY).
+	 * @return A boolean value.
+	 */
+	public boolean intersects(Vector4f area) {
+		if (boundsStale) {
+			recomputeBounds();
+		}
+		return numSprites > 0 && Bounds.touches(bounds, area);
+	}
+
+	/**
+	 * Stores the world space rectangle of the sprite at the given index. The bounds of the batch
+	 * are marked stale and rebuilt on the next culling test, in a single pass over the rectangles.
+	 *
+	 * @param index The index of the sprite in the sprites array.
+	 */
+	private void updateBounds(int index) {
+		Transform transform = sprites[index].gameObject.transform;
+		float x0 = transform.position.x, x1 = x0 + transform.scale.x;
+		float y0 = transform.position.y, y1 = y0 + transform.scale.y;
+		int b = index * 4;
+		spriteBounds[b] = Math.min(x0, x1);
+		spriteBounds[b + 1] = Math.min(y0, y1);
+		spriteBounds[b + 2] = Math.max(x0, x1);
+		spriteBounds[b + 3] = Math.max(y0, y1);
+		boundsStale = true;
+	}
+
+	/**
+	 * Rebuilds the bounds of the batch from the rectangles of its sprites
+	 */
+	private void recomputeBounds() {
+		Bounds.union(spriteBounds, numSprites, bounds);
+		boundsStale = false;
+	}
+
+	/**
+	 * Returns the slot the shader samples the given texture from, 0 when there is no texture
+	 *
+	 * @param texture The texture of a sprite of this batch.
+	 * @return The texture id written in the sprite data.
+	 */
+	protected int textureSlot(Texture texture) {
+		if (texture != null && inTextureArray(texture)) {
+			return TextureArray.LAYER_BASE + textureArray.layer(texture);
+		}
+		if (texture != null) {
+			for (int i = 0; i < textures.size(); i++) {
+				if (textures.get(i) == texture) {
+					return i + 1;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the factor the horizontal texture coordinates of the given texture must be scaled by
+	 *
+	 * @param texture The texture of a sprite of this batch.
+	 * @return The scale, 1 unless the texture is a smaller image inside a texture array layer.
+	 */
+	protected float uScale(Texture texture) {
+		return texture != null && inTextureArray(texture) ? textureArray.uScale(texture) : 1.0f;
+	}
+
+	/**
+	 * Returns the factor the vertical texture coordinates of the given texture must be scaled by
+	 *
+	 * @param texture The texture of a sprite of this batch.
+	 * @return The scale, 1 unless the texture is a smaller image inside a texture array layer.
+	 */
+	protected float vScale(Texture texture) {
+		return texture != null && inTextureArray(texture) ? textureArray.vScale(texture) : 1.0f;
+	}
+
+	/**
+	 * Returns true if the texture is sampled from the texture array rather than from a slot
+	 *
+	 * @param texture The texture to check.
+	 * @return A boolean value.
+	 */
+	private boolean inTextureArray(Texture texture) {
+		return textureArray != null && textureArray.fits(texture);
+	}
+
+	/**
+	 * Widens the dirty range of the sprite buffer, and of every region of the ring, so that it
+	 * covers the sprite at the given index
+	 *
+	 * @param index The index of the sprite whose data changed.
+	 */
+	private void markDirty(int index) {
+		dirtyMin = Math.min(dirtyMin, index);
+		dirtyMax = Math.max(dirtyMax, index);
+		for (int i = 0; i < RING_REGIONS; i++) {
+			regionDirtyMin[i] = Math.min(regionDirtyMin[i], index);
+			regionDirtyMax[i] = Math.max(regionDirtyMax[i], index);
+		}
+	}
+
+	/**
+	 * Empties the dirty range of the sprite buffer and of all the regions of the ring
+	 */
+	private void clearDirtyRanges() {
+		dirtyMin = Integer.MAX_VALUE;
+		dirtyMax = -1;
+		Arrays.fill(regionDirtyMin, Integer.MAX_VALUE);
+		Arrays.fill(regionDirtyMax, -1);
+	}
+
+	/**
+	 * Sends only the data of the sprites inside the dirty range with glBufferSubData, then empties
+	 * the range
+	 */
+	private void uploadDirtyRange() {
+		int start = dirtyMin * spriteBytes;
+		int end = (dirtyMax + 1) * spriteBytes;
+		spriteData.limit(end).position(start);
+		GLState.bindBuffer(GL_ARRAY_BUFFER, vboID);
+		glBufferSubData(GL_ARRAY_BUFFER, start, spriteData);
+		spriteData.clear();
+
+		dirtyMin = Integer.MAX_VALUE;
+		dirtyMax = -1;
+	}
+
+	/**
+	 * Copies the dirty sprites of the current region into the mapped ring. Every region keeps its
+	 * own dirty range, so a change is written once into each region as the ring comes around to
+	 * it; the fence of a region is only waited on when it is about to be written.
+	 *
+	 * @return The index of the first sprite of the region the batch has to be drawn from.
+	 */
+	private int streamSprites() {
+		int region = ringRegion;
+		if (regionDirtyMin[region] <= regionDirtyMax[region]) {
+			waitForRegion(region);
+			long start = (long) regionDirtyMin[region] * spriteBytes;
+			long end = (long) (regionDirtyMax[region] + 1) * spriteBytes;
+			long regionOffset = (long) region * spriteData.capacity();
+			memCopy(memAddress(spriteData, 0) + start, mappedAddress + regionOffset + start, end - start);
+			regionDirtyMin[region] = Integer.MAX_VALUE;
+			regionDirtyMax[region] = -1;
+		}
+
+		return region * maxBatchSize;
+	}
+
+	/**
+	 * Waits until the GPU has finished reading the given region of the ring, then deletes its fence.
+	 *
+	 * @param region The index of the region of the ring.
+	 */
+	private void waitForRegion(int region) {
+		long fence = fences[region];
+		if (fence == 0) {
+			return;
+		}
+
+		int status = glClientWaitSync(fence, 0, 0);
+		while (status == GL_TIMEOUT_EXPIRED) {
+			status = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT);
+		}
+		assert status != GL_WAIT_FAILED : "Error: (SpriteBatch) Waiting on the ring fence failed.";
+		glDeleteSync(fence);
+		fences[region] = 0;
+	}
+
+	/**
+	 * Returns true if the current context can create immutable, persistently mapped buffers
+	 *
+	 * @return A boolean value.
+	 */
+	private static boolean supportsBufferStorage() {
+		GLCapabilities caps = GL.getCapabilities();
+		return caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+	}
+
+	/**
+	 * Returns true if the room is occupied, false otherwise
+	 *
+	 * @return A boolean value.
+	 */
+	public boolean hasRoom() {
+		return this.hasRoom;
+	}
+
+	/**
+	 * Returns how many sprites the batch holds
+	 *
+	 * @return The number of sprites.
+	 */
+	public int size() {
+		return this.numSprites;
+	}
+
+	/**
+	 * Returns the maximum number of sprites the batch can hold
+	 *
+	 * @return The capacity of the batch.
+	 */
+	public int capacity() {
+		return this.maxBatchSize;
+	}
+
+	/**
+	 * If less than 8 texture slots are used by the sprites of the batch, return true. Slots of
+	 * textures whose sprites all left the batch count as free.
+	 *
+	 * @return A boolean value.
+	 */
+	public boolean hasTextureRoom() {
+		return this.slotTextures < 8;
+	}
+
+	/**
+	 * Returns true if the given texture is in the list of textures, or in the texture array of the
+	 * batch
+	 *
+	 * @param tex The texture to check for.
+	 * @return A boolean value.
+	 */
+	public boolean hasTexture(Texture tex) {
+		return inTextureArray(tex) || this.textures.contains(tex);
+	}
+
+	/**
+	 * Returns the way this batch uploads its sprites. It can differ from the requested one when
+	 * the context doesn't support persistent mapping.
+	 *
+	 * @return The upload mode of the batch.
+	 */
+	public UploadMode uploadMode() {
+		return this.uploadMode;
+	}
+
+	/**
+	 * Returns the z-index of the object
+	 *
+	 * @return The zIndex of the current object.
+	 */
+	public int zIndex() {
+		return this.zIndex;
+	}
+
+	/**
+	 * This function compares the zIndex of this batch to the zIndex of the batch passed in as a
+	 * parameter
+	 *
+	 * @param o The batch to compare to.
+	 * @return The return type is int. The compareTo method is being overridden. The compareTo
+	 * method is being overridden to compare the zIndex of the two batches.
+	 */
+	@Override
+	public int compareTo(SpriteBatch o) {
+		return Integer.compare(this.zIndex, o.zIndex());
+	}
+}
@@ -0,0 +1,72 @@
+package renderer;
+
+import org.joml.Vector2f;
+import org.joml.Vector4f;
+
+/**
+ * The drawable state of the sprites of a batch, stored as parallel primitive arrays indexed by the
+ * slot of each sprite in the batch. A sprite is gathered here once when it changes; the vertices
+ * or instance records are then built by a linear sweep over the arrays instead of following
+ * sprite, game object, transform and vector references for every vertex.
+ */
+public class SpriteStore {
+	final float[] x, y, width, height;
+	final float[] r, g, b, a;
+	final float[] uv;
+	final int[] texSlot;
+
+	/**
+	 * @param capacity The number of sprites the store can hold.
+	 */
+	public SpriteStore(int capacity) {
+		x = new float[capacity];
+		y = new float[capacity];
+		width = new float[capacity];
+		height = new float[capacity];
+		r = new float[capacity];
+		g = new float[capacity];
+		b = new float[capacity];
+		a = new float[capacity];
+		uv = new float[capacity * 8];
+		texSlot = new int[capacity];
+	}
+
+	/**
+	 * Stores the state of the sprite in the given slot
+	 *
+	 * @param index     The slot of the sprite in its batch.
+	 * @param position  The position of the sprite.
+	 * @param scale     The size of the sprite.
+	 * @param color     The color of the sprite.
+	 * @param texCoords The texture coordinates of the four corners.
+	 * @param uScale    The factor applied to the horizontal texture coordinates.
+	 * @param vScale    The factor applied to the vertical texture coordinates.
+	 * @param slot      The texture slot, 0 when the sprite has no texture.
+	 */
+	public void set(int index, Vector2f position, Vector2f scale, Vector4f color, Vector2f[] texCoords,
+	                float uScale, float vScale, int slot) {
+		x[index] = position.x;
+		y[index] = position.y;
+		width[index] = scale.x;
+		height[index] = scale.y;
+		r[index] = color.x;
+		g[index] = color.y;
+		b[index] = color.z;
+		a[index] = color.w;
+		int t = index * 8;
+		for (int i = 0; i < 4; i++) {
+			uv[t + i * 2] = texCoords[i].x * uScale;
+			uv[t + i * 2 + 1] = texCoords[i].y * vScale;
+		}
+		texSlot[index] = slot;
+	}
+
+	/**
+	 * Returns how many sprites the store can hold
+	 *
+	 * @return The capacity of the store.
+	 */
+	public int capacity() {
+		return x.length;
+	}
+}
@@ -6,12 +6,15 @@ import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
 import static org.lwjgl.stb.STBImage.*;
 
 public class Texture {
 	private String filepath;
 	private int texID;
 	private int width, height;
+	private int channels;
+	private boolean loaded;
 
 
 	/*public Texture(String filepath) {
@@ -22,7 +25,7 @@ public class Texture {
 		this.filepath = filepath;
 
 		texID = glGenTextures();
-		glBindTexture(GL_TEXTURE_2D, texID);
+		GLState.bindTexture(GL_TEXTURE_2D, texID);
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
@@ -35,23 +38,120 @@ public class Texture {
 		ByteBuffer image = stbi_load(filepath, width, height, channels, 0);
 
 		if (image != null) {
+			upload(width.get(0), height.get(0), channels.get(0), image);
+		} else {
+			assert false : "Error: (Texture) Could not load image '" + filepath + "'";
+		}
+
+		stbi_image_free(image);
+	}
+
+	/**
+	 * Creates the texture with a single white pixel, to be drawn until the image decoded in the
+	 * background is {@link #upload uploaded}. Only the header of the image is read here, so the
+	 * texture already reports the final size and spritesheets can be cut from it right away.
+	 *
+	 * @param filepath The path of the image.
+	 */
+	public void initPlaceholder(String filepath) {
+		this.filepath = filepath;
+
+		IntBuffer width = BufferUtils.createIntBuffer(1);
+		IntBuffer height = BufferUtils.createIntBuffer(1);
+		IntBuffer channels = BufferUtils.createIntBuffer(1);
+		if (stbi_info(filepath, width, height, channels)) {
 			this.width = width.get(0);
 			this.height = height.get(0);
+		} else {
+			assert false : "Error: (Texture) Could not read the header of image '" + filepath + "'";
+		}
 
-			if (channels.get(0) == 3) {
-				glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, width.get(0), height.get(0),
-						0, GL_RGB, GL_UNSIGNED_BYTE, image);
-			} else if (channels.get(0) == 4) {
-				glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width.get(0), height.get(0),
-						0, GL_RGBA, GL_UNSIGNED_BYTE, image);
-			} else {
-				assert false : "Error: (Texture) Unknown number of channels '" + channels.get(0) + "'";
-			}
+		texID = glGenTextures();
+		GLState.bindTexture(GL_TEXTURE_2D, texID);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE, new int[]{0xFFFFFFFF});
+	}
+
+	/**
+	 * Replaces the image of the texture. The texture id doesn't change, so the sprites drawn with
+	 * the placeholder show the real image from the next frame on.
+	 *
+	 * @param width    The width of the image.
+	 * @param height   The height of the image.
+	 * @param channels The number of channels of the image, 3 or 4.
+	 * @param pixels   The pixels of the image, bottom row first, or null to read them from the
+	 *                 pixel unpack buffer currently bound.
+	 */
+	public void upload(int width, int height, int channels, ByteBuffer pixels) {
+		if (texID == 0) {
+			return;
+		}
+		this.width = width;
+		this.height = height;
+		this.channels = channels;
+
+		GLState.bindTexture(GL_TEXTURE_2D, texID);
+		if (channels == 3) {
+			glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, width, height,
+					0, GL_RGB, GL_UNSIGNED_BYTE, pixels);
+		} else if (channels == 4) {
+			glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height,
+					0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
 		} else {
-			assert false : "Error: (Texture) Could not load image '" + filepath + "'";
+			assert false : "Error: (Texture) Unknown number of channels '" + channels + "'";
+			return;
 		}
+		this.loaded = true;
+	}
 
-		stbi_image_free(image);
+	/**
+	 * Creates the texture from pixels already in memory, like the pages of a texture atlas.
+	 * The texture has no file path, so it can't be reloaded from disk
+	 *
+	 * @param width  The width of the image.
+	 * @param height The height of the image.
+	 * @param pixels The RGBA pixels of the image, bottom row first.
+	 */
+	public void init(int width, int height, ByteBuffer pixels) {
+		this.filepath = null;
+		this.width = width;
+		this.height = height;
+
+		texID = glGenTextures();
+		GLState.bindTexture(GL_TEXTURE_2D, texID);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+		this.channels = 4;
+		this.loaded = true;
+	}
+
+	/**
+	 * Deletes the texture from the GPU. An upload still pending for it is dropped.
+	 */
+	public void destroy() {
+		if (texID != 0) {
+			GLState.deleteTexture(texID);
+			texID = 0;
+			loaded = false;
+		}
+	}
+
+	/**
+	 * Estimates the GPU memory taken by the texture from its size and number of channels
+	 *
+	 * @return The size of the texture in bytes, 4 for a placeholder.
+	 */
+	public long gpuBytes() {
+		if (texID == 0) {
+			return 0;
+		}
+		return loaded ? (long) width * height * channels : 4;
 	}
 
 
@@ -59,14 +159,61 @@ public class Texture {
 	 * Binds the texture to the current texture unit
 	 */
 	public void bind() {
-		glBindTexture(GL_TEXTURE_2D, texID);
+		GLState.bindTexture(GL_TEXTURE_2D, texID);
+	}
+
+	/**
+	 * Binds the texture to the given texture unit, switching the active unit only if the texture
+	 * isn't already bound there
+	 *
+	 * @param unit The index of the texture unit.
+	 */
+	public void bind(int unit) {
+		GLState.bindTexture(unit, GL_TEXTURE_2D, texID);
 	}
 
 	/**
 	 * Unbinds the texture from the current texture unit
 	 */
 	public void unbind() {
-		glBindTexture(GL_TEXTURE_2D, 0);
+		GLState.bindTexture(GL_TEXTURE_2D, 0);
+	}
+
+	/**
+	 * Returns the path of the image the texture was loaded from
+	 *
+	 * @return The file path of the texture.
+	 */
+	public String getFilepath() {
+		return this.filepath;
+	}
+
+	/**
+	 * Returns the OpenGL id of the texture, for copying its image on the GPU
+	 *
+	 * @return The texture id, 0 once destroyed.
+	 */
+	int getTexID() {
+		return this.texID;
+	}
+
+	/**
+	 * Returns the number of channels of the image, which decides its internal format
+	 *
+	 * @return 3 for an RGB texture, 4 for an RGBA one.
+	 */
+	int getChannels() {
+		return this.channels;
+	}
+
+	/**
+	 * Returns false while the texture still shows the placeholder of an image loading in the
+	 * background
+	 *
+	 * @return A boolean value.
+	 */
+	public boolean isLoaded() {
+		return this.loaded;
 	}
 
 	/**
@@ -0,0 +1,314 @@
+package renderer;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import util.AssetPool;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL43.glCopyImageSubData;
+
+/**
+ * A GL_TEXTURE_2D_ARRAY shared by all the batches of a renderer. Every texture that fits in a layer
+ * gets one: textures of exactly the layer size fill it, smaller ones sit in its bottom-left corner
+ * and their texture coordinates are scaled to match. Since a batch binds the whole array at once,
+ * those textures don't count against its 8 texture slots. Textures bigger than a layer keep using
+ * the slots. The image of a texture is copied into its layer on the GPU, from the texture itself,
+ * once it is loaded. The layer of a texture evicted from the {@link AssetPool} is freed for the
+ * next one.
+ */
+public class TextureArray {
+	/**
+	 * Texture ids at or above this value address a layer of the array instead of a texture slot.
+	 */
+	public static final int LAYER_BASE = 16;
+	private static final int MAX_TEX_ID = 255;
+	private static final int INITIAL_LAYERS = 8;
+
+	private final int layerWidth, layerHeight;
+	private final Map<Texture, Integer> layers;
+	private final List<Texture> textures;
+	private final PriorityQueue<Integer> freeLayers;
+	private final List<Integer> pendingLayers;
+	private final Set<Texture> rejected;
+	private final int maxLayers;
+	private int texID;
+	private int capacity;
+
+	public TextureArray(int layerWidth, int layerHeight) {
+		this.layerWidth = layerWidth;
+		this.layerHeight = layerHeight;
+		this.layers = new HashMap<>();
+		this.textures = new ArrayList<>();
+		this.freeLayers = new PriorityQueue<>();
+		this.pendingLayers = new ArrayList<>();
+		this.rejected = Collections.newSetFromMap(new WeakHashMap<>());
+		this.maxLayers = Math.min(glGetInteger(GL_MAX_ARRAY_TEXTURE_LAYERS), MAX_TEX_ID - LAYER_BASE + 1);
+		this.texID = allocate(Math.min(INITIAL_LAYERS, maxLayers));
+		AssetPool.addTextureArray(this);
+	}
+
+	/**
+	 * Returns true if the texture is stored in a layer of the array. The answer is decided the
+	 * first time a texture is checked and never changes afterwards, so every batch samples a
+	 * texture the same way: a texture that fits takes its layer right away, one that comes while
+	 * the array is full keeps using texture slots for good.
+	 *
+	 * @param texture The texture to check.
+	 * @return A boolean value.
+	 */
+	public boolean fits(Texture texture) {
+		if (layers.containsKey(texture)) {
+			return true;
+		}
+		if (texture.getFilepath() == null || texture.getWidth() > layerWidth || texture.getHeight() > layerHeight
+				|| rejected.contains(texture)) {
+			return false;
+		}
+		if (layers.size() >= maxLayers) {
+			rejected.add(texture);
+			return false;
+		}
+		assign(texture);
+		return true;
+	}
+
+	/**
+	 * Returns the layer holding the texture
+	 *
+	 * @param texture A texture that {@link #fits(Texture) fits} the array.
+	 * @return The index of the layer.
+	 */
+	public int layer(Texture texture) {
+		Integer layer = layers.get(texture);
+		if (layer == null) {
+			boolean fits = fits(texture);
+			assert fits : "Error: (TextureArray) Texture '" + texture.getFilepath() + "' doesn't fit the array.";
+			layer = layers.get(texture);
+		}
+		return layer;
+	}
+
+	/**
+	 * Gives the texture a layer, reusing a freed layer before growing the array, and copies its
+	 * image there, or waits for it to be loaded first
+	 *
+	 * @param texture The texture to store.
+	 */
+	private void assign(Texture texture) {
+		int newLayer;
+		if (!freeLayers.isEmpty()) {
+			newLayer = freeLayers.poll();
+			textures.set(newLayer, texture);
+		} else {
+			if (textures.size() == capacity) {
+				grow(Math.min(capacity * 2, maxLayers));
+			}
+			newLayer = textures.size();
+			textures.add(texture);
+		}
+		layers.put(texture, newLayer);
+		if (texture.isLoaded()) {
+			copyTexture(texture, newLayer);
+		} else {
+			pendingLayers.add(newLayer);
+		}
+	}
+
+	/**
+	 * Copies the images of the textures that finished loading in the background into their
+	 * layers. It is called each time the array is bound, and costs nothing when no texture waits.
+	 */
+	private void copyLoadedTextures() {
+		for (int i = pendingLayers.size() - 1; i >= 0; i--) {
+			int layer = pendingLayers.get(i);
+			Texture texture = textures.get(layer);
+			if (texture == null) {
+				pendingLayers.remove(i);
+			} else if (texture.isLoaded()) {
+				copyTexture(texture, layer);
+				pendingLayers.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Frees the layer of the texture, for the next texture added to the array. It is called when
+	 * the texture is evicted, after which no sprite should use it anymore.
+	 *
+	 * @param texture The texture to remove from the array.
+	 */
+	public void release(Texture texture) {
+		Integer layer = layers.remove(texture);
+		if (layer != null) {
+			textures.set(layer, null);
+			freeLayers.add(layer);
+			pendingLayers.remove(layer);
+		}
+	}
+
+	/**
+	 * Returns the horizontal scale to apply to the texture coordinates of a texture in the array
+	 *
+	 * @param texture A texture stored in the array.
+	 * @return The fraction of the layer width covered by the texture.
+	 */
+	public float uScale(Texture texture) {
+		return texture.getWidth() / (float) layerWidth;
+	}
+
+	/**
+	 * Returns the vertical scale to apply to the texture coordinates of a texture in the array
+	 *
+	 * @param texture A texture stored in the array.
+	 * @return The fraction of the layer height covered by the texture.
+	 */
+	public float vScale(Texture texture) {
+		return texture.getHeight() / (float) layerHeight;
+	}
+
+	/**
+	 * Binds the array to the current texture unit
+	 */
+	public void bind() {
+		copyLoadedTextures();
+		GLState.bindTexture(GL_TEXTURE_2D_ARRAY, texID);
+	}
+
+	/**
+	 * Binds the array to the given texture unit
+	 *
+	 * @param unit The index of the texture unit.
+	 */
+	public void bind(int unit) {
+		copyLoadedTextures();
+		GLState.bindTexture(unit, GL_TEXTURE_2D_ARRAY, texID);
+	}
+
+	/**
+	 * Unbinds the array from the current texture unit
+	 */
+	public void unbind() {
+		GLState.bindTexture(GL_TEXTURE_2D_ARRAY, 0);
+	}
+
+	/**
+	 * Replaces the GL texture with a bigger one and copies the used layers into it on the GPU,
+	 * so that no image has to be decoded and uploaded again
+	 *
+	 * @param layerCount The number of layers of the new texture.
+	 */
+	private void grow(int layerCount) {
+		int oldID = texID;
+		int newID = allocate(layerCount);
+		GLCapabilities caps = GL.getCapabilities();
+		if (caps.OpenGL43 || caps.GL_ARB_copy_image) {
+			glCopyImageSubData(oldID, GL_TEXTURE_2D_ARRAY, 0, 0, 0, 0,
+					newID, GL_TEXTURE_2D_ARRAY, 0, 0, 0, 0, layerWidth, layerHeight, textures.size());
+		} else {
+			blitLayers(oldID, newID, textures.size());
+		}
+		GLState.deleteTexture(oldID);
+		texID = newID;
+	}
+
+	/**
+	 * Copies the first layers of an array texture into another one, one layer at a time, through
+	 * a read and a draw framebuffer
+	 *
+	 * @param srcID      The texture to copy from.
+	 * @param dstID      The texture to copy into.
+	 * @param layerCount The number of layers to copy.
+	 */
+	private void blitLayers(int srcID, int dstID, int layerCount) {
+		int[] blit = beginBlit();
+		for (int layer = 0; layer < layerCount; layer++) {
+			glFramebufferTextureLayer(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, srcID, 0, layer);
+			glFramebufferTextureLayer(GL_DRAW_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, dstID, 0, layer);
+			glBlitFramebuffer(0, 0, layerWidth, layerHeight, 0, 0, layerWidth, layerHeight,
+					GL_COLOR_BUFFER_BIT, GL_NEAREST);
+		}
+		endBlit(blit);
+	}
+
+	/**
+	 * Copies the image of a loaded texture into a layer, on the GPU: with glCopyImageSubData when
+	 * the context has it and the texture is RGBA like the array, otherwise with a framebuffer blit,
+	 * which also converts an RGB texture
+	 *
+	 * @param texture The texture to copy.
+	 * @param layer   The layer to copy it into.
+	 */
+	private void copyTexture(Texture texture, int layer) {
+		int width = texture.getWidth(), height = texture.getHeight();
+		GLCapabilities caps = GL.getCapabilities();
+		if (texture.getChannels() == 4 && (caps.OpenGL43 || caps.GL_ARB_copy_image)) {
+			glCopyImageSubData(texture.getTexID(), GL_TEXTURE_2D, 0, 0, 0, 0,
+					texID, GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, width, height, 1);
+			return;
+		}
+
+		int[] blit = beginBlit();
+		glFramebufferTexture2D(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture.getTexID(), 0);
+		glFramebufferTextureLayer(GL_DRAW_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, texID, 0, layer);
+		glBlitFramebuffer(0, 0, width, height, 0, 0, width, height, GL_COLOR_BUFFER_BIT, GL_NEAREST);
+		endBlit(blit);
+	}
+
+	/**
+	 * Creates a read and a draw framebuffer for a copy and binds them, remembering the
+	 * framebuffers bound before
+	 *
+	 * @return The previous read and draw framebuffers, then the two new ones.
+	 */
+	private static int[] beginBlit() {
+		int[] blit = {glGetInteger(GL_READ_FRAMEBUFFER_BINDING), glGetInteger(GL_DRAW_FRAMEBUFFER_BINDING),
+				glGenFramebuffers(), glGenFramebuffers()};
+		glBindFramebuffer(GL_READ_FRAMEBUFFER, blit[2]);
+		glBindFramebuffer(GL_DRAW_FRAMEBUFFER, blit[3]);
+		return blit;
+	}
+
+	/**
+	 * Binds the framebuffers bound before {@link #beginBlit()} again and deletes the ones it created
+	 *
+	 * @param blit The framebuffers returned by {@link #beginBlit()}.
+	 */
+	private static void endBlit(int[] blit) {
+		glBindFramebuffer(GL_READ_FRAMEBUFFER, blit[0]);
+		glBindFramebuffer(GL_DRAW_FRAMEBUFFER, blit[1]);
+		glDeleteFramebuffers(blit[2]);
+		glDeleteFramebuffers(blit[3]);
+	}
+
+	/**
+	 * Creates an empty GL texture of the given number of layers
+	 *
+	 * @param layerCount The number of layers of the new texture.
+	 * @return The id of the new texture.
+	 */
+	private int allocate(int layerCount) {
+		capacity = layerCount;
+		int id = glGenTextures();
+		GLState.bindTexture(GL_TEXTURE_2D_ARRAY, id);
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA8, layerWidth, layerHeight, capacity,
+				0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+		return id;
+	}
+}
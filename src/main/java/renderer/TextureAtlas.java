@@ -0,0 +1,181 @@
+package renderer;
+
+import components.Sprite;
+import org.joml.Vector2f;
+import org.lwjgl.BufferUtils;
+import util.AtlasPacker;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+
+/**
+ * Textures packed at runtime into a few large pages, so that sprites coming from different images
+ * can share the same texture slot of a batch. Sprites are moved onto the atlas with
+ * {@link #remap(Sprite)}, which rewrites their texture and texture coordinates.
+ */
+public class TextureAtlas {
+	private static final int RGBA = 4;
+
+	private final Map<Texture, Region> regions;
+	private final List<Texture> pages;
+	private final Map<Sprite, Sprite> originals;
+
+	private TextureAtlas() {
+		this.regions = new HashMap<>();
+		this.pages = new ArrayList<>();
+		this.originals = new WeakHashMap<>();
+	}
+
+	/**
+	 * Packs the images of the given textures into pages, largest first. Textures bigger than a page
+	 * are left out and keep being used on their own.
+	 *
+	 * @param textures  The textures to pack.
+	 * @param pageSize  The width and height of a page in pixels.
+	 * @param padding   The empty pixels left between two images.
+	 * @return The atlas holding the packed textures.
+	 */
+	public static TextureAtlas build(Collection<Texture> textures, int pageSize, int padding) {
+		List<Texture> sorted = new ArrayList<>(textures);
+		sorted.sort((a, b) -> Integer.compare(b.getWidth() * b.getHeight(), a.getWidth() * a.getHeight()));
+
+		TextureAtlas atlas = new TextureAtlas();
+		AtlasPacker packer = new AtlasPacker(pageSize, pageSize, padding);
+		List<ByteBuffer> pixels = new ArrayList<>();
+		IntBuffer width = BufferUtils.createIntBuffer(1);
+		IntBuffer height = BufferUtils.createIntBuffer(1);
+		IntBuffer channels = BufferUtils.createIntBuffer(1);
+		stbi_set_flip_vertically_on_load(true);
+
+		for (Texture texture : sorted) {
+			if (texture.getFilepath() == null) {
+				continue;
+			}
+			AtlasPacker.Placement placement = packer.pack(texture.getWidth(), texture.getHeight());
+			if (placement == null) {
+				continue;
+			}
+			ByteBuffer image = stbi_load(texture.getFilepath(), width, height, channels, RGBA);
+			if (image == null) {
+				assert false : "Error: (TextureAtlas) Could not load image '" + texture.getFilepath() + "'";
+				continue;
+			}
+
+			while (pixels.size() <= placement.page) {
+				pixels.add(BufferUtils.createByteBuffer(pageSize * pageSize * RGBA));
+			}
+			long src = memAddress(image);
+			long dst = memAddress(pixels.get(placement.page));
+			int rowBytes = placement.width * RGBA;
+			for (int row = 0; row < placement.height; row++) {
+				long dstOffset = ((long) (placement.y + row) * pageSize + placement.x) * RGBA;
+				memCopy(src + (long) row * rowBytes, dst + dstOffset, rowBytes);
+			}
+			stbi_image_free(image);
+
+			atlas.regions.put(texture, new Region(placement, pageSize));
+		}
+
+		for (ByteBuffer pagePixels : pixels) {
+			Texture page = new Texture();
+			page.init(pageSize, pageSize, pagePixels);
+			atlas.pages.add(page);
+		}
+		return atlas;
+	}
+
+	/**
+	 * Moves a sprite onto the atlas: its texture becomes the page holding its image and its
+	 * texture coordinates are rewritten to the region of that page. Sprites whose texture is not in
+	 * the atlas are left untouched.
+	 *
+	 * @param sprite The sprite to remap.
+	 * @return true if the sprite was moved onto the atlas.
+	 */
+	public boolean remap(Sprite sprite) {
+		Region region = regions.get(sprite.getTexture());
+		if (region == null) {
+			return false;
+		}
+
+		Vector2f[] texCoords = sprite.getTexCoords();
+		Vector2f[] remapped = new Vector2f[texCoords.length];
+		for (int i = 0; i < texCoords.length; i++) {
+			remapped[i] = new Vector2f(region.u0 + texCoords[i].x * region.uSize,
+					region.v0 + texCoords[i].y * region.vSize);
+		}
+		Sprite original = new Sprite();
+		original.setTexture(sprite.getTexture());
+		original.setTexCoords(texCoords);
+		originals.put(sprite, original);
+
+		sprite.setTexture(pages.get(region.page));
+		sprite.setTexCoords(remapped);
+		return true;
+	}
+
+	/**
+	 * Returns the sprite as it was before it was {@link #remap(Sprite) remapped}: with its own
+	 * texture and texture coordinates, which is what a saved level has to refer to since the pages
+	 * of the atlas are built at runtime and have no file
+	 *
+	 * @param sprite A sprite, remapped or not.
+	 * @return The original sprite, or the sprite itself if it wasn't remapped by this atlas.
+	 */
+	public Sprite original(Sprite sprite) {
+		Sprite original = originals.get(sprite);
+		return original != null ? original : sprite;
+	}
+
+	/**
+	 * Returns true if the image of the texture was packed in the atlas
+	 *
+	 * @param texture The texture to check.
+	 * @return A boolean value.
+	 */
+	public boolean contains(Texture texture) {
+		return regions.containsKey(texture);
+	}
+
+	/**
+	 * Returns the texture of a page of the atlas
+	 *
+	 * @param index The index of the page.
+	 * @return The page texture.
+	 */
+	public Texture page(int index) {
+		return pages.get(index);
+	}
+
+	/**
+	 * Returns how many pages the atlas is made of
+	 *
+	 * @return The number of pages.
+	 */
+	public int pageCount() {
+		return pages.size();
+	}
+
+	private static class Region {
+		private final int page;
+		private final float u0, v0, uSize, vSize;
+
+		private Region(AtlasPacker.Placement placement, int pageSize) {
+			this.page = placement.page;
+			this.u0 = placement.x / (float) pageSize;
+			this.v0 = placement.y / (float) pageSize;
+			this.uSize = placement.width / (float) pageSize;
+			this.vSize = placement.height / (float) pageSize;
+		}
+	}
+}
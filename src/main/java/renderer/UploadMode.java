@@ -0,0 +1,19 @@
+package renderer;
+
+/**
+ * The way a {@link RenderBatch} sends its vertex data to the GPU.
+ */
+public enum UploadMode {
+	/**
+	 * Re-uploads the vertex data with glBufferSubData whenever a sprite changes. Works on every
+	 * OpenGL 3.3 context and is the fallback of the other modes.
+	 */
+	SUB_DATA,
+
+	/**
+	 * Writes the vertex data straight into a persistently mapped buffer split in a ring of three
+	 * regions, each one guarded by a fence, so the CPU never waits for the GPU to stop reading the
+	 * region it is writing. Needs OpenGL 4.4 or ARB_buffer_storage.
+	 */
+	PERSISTENT_MAPPED
+}
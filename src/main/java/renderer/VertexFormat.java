@@ -0,0 +1,138 @@
+package renderer;
+
+import org.joml.Vector4f;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+
+/**
+ * The memory layout of a sprite vertex inside a {@link RenderBatch}. Both layouts feed the same
+ * shader attributes, OpenGL converts the packed types back to floats when it fetches them.
+ */
+public enum VertexFormat {
+	/**
+	 * Nine floats (36 bytes): position, RGBA color, texture coordinates and texture slot.
+	 */
+	STANDARD(9 * Float.BYTES) {
+		@Override
+		public void putVertex(ByteBuffer buffer, int offset, float x, float y, Vector4f color,
+		                      float u, float v, int texId) {
+			buffer.putFloat(offset, x);
+			buffer.putFloat(offset + 4, y);
+			buffer.putFloat(offset + 8, color.x);
+			buffer.putFloat(offset + 12, color.y);
+			buffer.putFloat(offset + 16, color.z);
+			buffer.putFloat(offset + 20, color.w);
+			buffer.putFloat(offset + 24, u);
+			buffer.putFloat(offset + 28, v);
+			buffer.putFloat(offset + 32, texId);
+		}
+
+		@Override
+		public void setupAttributes() {
+			glVertexAttribPointer(0, 2, GL_FLOAT, false, stride, 0);
+			glVertexAttribPointer(1, 4, GL_FLOAT, false, stride, 8);
+			glVertexAttribPointer(2, 2, GL_FLOAT, false, stride, 24);
+			glVertexAttribPointer(3, 1, GL_FLOAT, false, stride, 32);
+		}
+	},
+
+	/**
+	 * Twenty bytes: float position, normalized unsigned byte RGBA color, normalized unsigned short
+	 * texture coordinates and an unsigned byte texture slot, padded to keep every vertex 4-byte
+	 * aligned. The texture coordinates must lie in [0, 1].
+	 */
+	PACKED(20) {
+		@Override
+		public void putVertex(ByteBuffer buffer, int offset, float x, float y, Vector4f color,
+		                      float u, float v, int texId) {
+			buffer.putFloat(offset, x);
+			buffer.putFloat(offset + 4, y);
+			buffer.putInt(offset + 8, packColor(color));
+			buffer.putShort(offset + 12, packUnorm16(u));
+			buffer.putShort(offset + 14, packUnorm16(v));
+			buffer.put(offset + 16, (byte) texId);
+		}
+
+		@Override
+		public void setupAttributes() {
+			glVertexAttribPointer(0, 2, GL_FLOAT, false, stride, 0);
+			glVertexAttribPointer(1, 4, GL_UNSIGNED_BYTE, true, stride, 8);
+			glVertexAttribPointer(2, 2, GL_UNSIGNED_SHORT, true, stride, 12);
+			glVertexAttribPointer(3, 1, GL_UNSIGNED_BYTE, false, stride, 16);
+		}
+	};
+
+	protected final int stride;
+
+	VertexFormat(int stride) {
+		this.stride = stride;
+	}
+
+	/**
+	 * Writes one vertex at the given byte offset of the buffer
+	 *
+	 * @param buffer The buffer holding the vertices of a batch, in native byte order.
+	 * @param offset The byte offset of the vertex.
+	 * @param x      The x coordinate of the vertex.
+	 * @param y      The y coordinate of the vertex.
+	 * @param color  The color of the vertex.
+	 * @param u      The horizontal texture coordinate.
+	 * @param v      The vertical texture coordinate.
+	 * @param texId  The texture slot, 0 when the sprite has no texture.
+	 */
+	public abstract void putVertex(ByteBuffer buffer, int offset, float x, float y, Vector4f color,
+	                               float u, float v, int texId);
+
+	/**
+	 * Describes the layout to the currently bound vao and vbo with glVertexAttribPointer
+	 */
+	public abstract void setupAttributes();
+
+	/**
+	 * Returns the size of one vertex in bytes
+	 *
+	 * @return The stride of the layout.
+	 */
+	public int stride() {
+		return this.stride;
+	}
+
+	/**
+	 * Packs a color into four normalized unsigned bytes, red in the lowest address
+	 *
+	 * @param color The color to pack, each channel in [0, 1].
+	 * @return The packed color, ready to be written in native byte order.
+	 */
+	static int packColor(Vector4f color) {
+		int r = packUnorm8(color.x), g = packUnorm8(color.y);
+		int b = packUnorm8(color.z), a = packUnorm8(color.w);
+		if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+			return r | g << 8 | b << 16 | a << 24;
+		}
+		return r << 24 | g << 16 | b << 8 | a;
+	}
+
+	/**
+	 * Converts a value in [0, 1] to an unsigned byte, rounding to the nearest step
+	 *
+	 * @param value The value to convert, clamped to [0, 1].
+	 * @return The value as an int between 0 and 255.
+	 */
+	static int packUnorm8(float value) {
+		return Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 255.0f);
+	}
+
+	/**
+	 * Converts a value in [0, 1] to an unsigned short, rounding to the nearest step
+	 *
+	 * @param value The value to convert, clamped to [0, 1].
+	 * @return The value as the bits of an unsigned short.
+	 */
+	static short packUnorm16(float value) {
+		return (short) Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 65535.0f);
+	}
+}
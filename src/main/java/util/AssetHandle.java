@@ -0,0 +1,46 @@
+package util;
+
+/**
+ * A counted reference to an asset of the {@link AssetPool}. Each acquire returns a new handle,
+ * which must be released exactly once; the asset may be evicted after its last handle is
+ * released.
+ *
+ * @param <T> The type of the asset.
+ */
+public final class AssetHandle<T> {
+	private final AssetPool.Entry<T> entry;
+	private boolean released;
+
+	AssetHandle(AssetPool.Entry<T> entry) {
+		this.entry = entry;
+	}
+
+	/**
+	 * Returns the asset
+	 *
+	 * @return The asset referenced by the handle.
+	 */
+	public T get() {
+		assert !released : "Error: (AssetHandle) The asset was already released.";
+		return entry.asset;
+	}
+
+	/**
+	 * Returns the pool entry the handle references
+	 *
+	 * @return The entry of the asset.
+	 */
+	AssetPool.Entry<T> entry() {
+		return this.entry;
+	}
+
+	/**
+	 * Gives the reference back to the pool. Releasing a handle twice has no effect.
+	 */
+	public void release() {
+		if (!released) {
+			released = true;
+			AssetPool.release(entry);
+		}
+	}
+}
@@ -1,54 +1,533 @@
 package util;
 
+import components.Sprite;
 import components.Spritesheet;
+import renderer.Renderer;
 import renderer.Shader;
 import renderer.Texture;
+import renderer.TextureArray;
+import renderer.TextureAtlas;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * The registry of the loaded assets, keyed by absolute path. The maps are concurrent and every
+ * asset is created inside computeIfAbsent, so two threads asking for the same asset get the same
+ * instance and it is only loaded once. Shaders and textures still create OpenGL objects, so they
+ * must be first requested on the GL thread; spritesheets and lookups are safe from any thread.
+ * <p>
+ * Assets fetched with the get methods are kept until the process exits. Assets fetched with the
+ * acquire methods are reference counted: once their last {@link AssetHandle} is released they
+ * wait in a least recently used list, and are deleted from the GPU when the estimated memory of
+ * the loaded textures exceeds the budget. Releasing, and so evicting, happens on the GL thread.
+ */
 public class AssetPool {
-	private static final Map<String, Shader> shaders = new HashMap<>();
-	private static final Map<String, Texture> textures = new HashMap<>();
-	private static final Map<String, Spritesheet> spritesheets = new HashMap<>();
+	private static final ConcurrentMap<String, String> keys = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, Entry<Shader>> shaders = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, Entry<Texture>> textures = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, Entry<Spritesheet>> spritesheets = new ConcurrentHashMap<>();
+	private static volatile TextureAtlas atlas = null;
+	private static final Set<TextureArray> textureArrays = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+	private static final Set<Renderer> renderers = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+	private static final TextureLoader loader = new TextureLoader(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	private static long uploadBudget = 2_000_000L;
 
-	public static Shader getShader(String resourceName) {
-		File file = new File(resourceName);
-		if (AssetPool.shaders.containsKey(file.getAbsolutePath())) {
-			return AssetPool.shaders.get(file.getAbsolutePath());
-		} else {
-			Shader shader = new Shader(resourceName);
-			shader.compile();
-			AssetPool.shaders.put(file.getAbsolutePath(), shader);
-			return shader;
+	private static final LinkedHashSet<Entry<?>> unused = new LinkedHashSet<>();
+	private static long memoryBudget = 256L * 1024 * 1024;
+	private static final AtomicLong lookups = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Returns the key of a resource: its absolute path, computed on the first request only
+	 *
+	 * @param resourceName The path of the resource, as given by the caller.
+	 * @return The canonical key of the resource.
+	 */
+	private static String key(String resourceName) {
+		String key = AssetPool.keys.get(resourceName);
+		if (key == null) {
+			key = AssetPool.keys.computeIfAbsent(resourceName, name -> new File(name).getAbsolutePath().intern());
+		}
+		return key;
+	}
+
+	/**
+	 * Looks up the entry of an asset, loading the asset if it isn't in the map. The asset is loaded
+	 * outside of the map's locks, so a slow load doesn't block the lookups of other assets; if two
+	 * threads load the same asset at once, the first one published is kept and the other is
+	 * deleted.
+	 *
+	 * @param map    The map of the kind of asset.
+	 * @param key    The key of the asset.
+	 * @param loader Creates the asset on a miss.
+	 * @return The entry of the asset.
+	 */
+	private static <T> Entry<T> lookup(ConcurrentMap<String, Entry<T>> map, String key, Supplier<T> loader) {
+		AssetPool.lookups.incrementAndGet();
+		Entry<T> entry = map.get(key);
+		if (entry == null) {
+			Entry<T> loaded = new Entry<>(map, key, loader.get());
+			entry = map.putIfAbsent(key, loaded);
+			if (entry == null) {
+				AssetPool.misses.incrementAndGet();
+				entry = loaded;
+			} else {
+				destroy(loaded.asset);
+			}
 		}
+		return entry;
+	}
+
+	private static Shader loadShader(String resourceName) {
+		Shader shader = new Shader(resourceName);
+		shader.compile();
+		return shader;
+	}
+
+	private static Texture loadTexture(String resourceName) {
+		Texture texture = new Texture();
+		texture.init(resourceName);
+		return texture;
+	}
+
+	private static Texture loadTextureAsync(String resourceName) {
+		Texture texture = new Texture();
+		texture.initPlaceholder(resourceName);
+		loader.load(texture);
+		return texture;
+	}
+
+	public static Shader getShader(String resourceName) {
+		String key = key(resourceName);
+		return pin(() -> lookup(shaders, key, () -> loadShader(resourceName)));
 	}
 
 	public static Texture getTexture(String resourceName) {
-		File file = new File(resourceName);
-		if (AssetPool.textures.containsKey(file.getAbsolutePath())) {
-			return AssetPool.textures.get(file.getAbsolutePath());
-		} else {
-			Texture texture = new Texture();
-			texture.init(resourceName);
-			AssetPool.textures.put(file.getAbsolutePath(), texture);
-			return texture;
+		String key = key(resourceName);
+		return pin(() -> lookup(textures, key, () -> loadTexture(resourceName)));
+	}
+
+	/**
+	 * Returns the texture of the given image without waiting for it to load. The first call
+	 * creates a placeholder of the right size and queues the image for decoding on a worker
+	 * thread; the texture is filled in by {@link #uploadPendingTextures()} a few frames later.
+	 *
+	 * @param resourceName The path of the image.
+	 * @return The texture, possibly still showing its placeholder.
+	 */
+	public static Texture getTextureAsync(String resourceName) {
+		String key = key(resourceName);
+		return pin(() -> lookup(textures, key, () -> loadTextureAsync(resourceName)));
+	}
+
+	/**
+	 * Returns a counted reference to the shader, loading it if needed
+	 *
+	 * @param resourceName The path of the shader.
+	 * @return A handle to release once the shader is no longer used.
+	 */
+	public static AssetHandle<Shader> acquireShader(String resourceName) {
+		String key = key(resourceName);
+		return acquire(() -> lookup(shaders, key, () -> loadShader(resourceName)));
+	}
+
+	/**
+	 * Returns a counted reference to the texture, loading it if needed
+	 *
+	 * @param resourceName The path of the image.
+	 * @return A handle to release once the texture is no longer used.
+	 */
+	public static AssetHandle<Texture> acquireTexture(String resourceName) {
+		String key = key(resourceName);
+		return acquire(() -> lookup(textures, key, () -> loadTexture(resourceName)));
+	}
+
+	/**
+	 * Returns a counted reference to the texture, loading it in the background if needed like
+	 * {@link #getTextureAsync(String)}
+	 *
+	 * @param resourceName The path of the image.
+	 * @return A handle to release once the texture is no longer used.
+	 */
+	public static AssetHandle<Texture> acquireTextureAsync(String resourceName) {
+		String key = key(resourceName);
+		return acquire(() -> lookup(textures, key, () -> loadTextureAsync(resourceName)));
+	}
+
+	/**
+	 * Returns a new counted reference to a texture the pool already holds, for code that was given
+	 * the texture rather than its path, such as the batches drawing it
+	 *
+	 * @param texture The texture.
+	 * @return A handle to release once the texture is no longer used, or null if the texture
+	 * doesn't come from the pool or was already evicted.
+	 */
+	public static AssetHandle<Texture> retain(Texture texture) {
+		if (texture.getFilepath() == null) {
+			return null;
+		}
+		Entry<Texture> entry = AssetPool.textures.get(key(texture.getFilepath()));
+		if (entry == null || entry.asset != texture) {
+			return null;
+		}
+		synchronized (AssetPool.unused) {
+			if (entry.evicted) {
+				return null;
+			}
+			entry.refs++;
+			AssetPool.unused.remove(entry);
+			return new AssetHandle<>(entry);
 		}
 	}
 
-	public static void addSpritesheet(String resourceName, Spritesheet spritesheet) {
-		File file = new File(resourceName);
-		if (!AssetPool.spritesheets.containsKey(file.getAbsolutePath())) {
-			AssetPool.spritesheets.put(file.getAbsolutePath(), spritesheet);
+	/**
+	 * Returns a counted reference to a spritesheet added with
+	 * {@link #addSpritesheet(String, Spritesheet)}
+	 *
+	 * @param resourceName The name the spritesheet was added under.
+	 * @return A handle to release once the spritesheet is no longer used, or null if there is no
+	 * such spritesheet.
+	 */
+	public static AssetHandle<Spritesheet> acquireSpritesheet(String resourceName) {
+		String key = key(resourceName);
+		if (!AssetPool.spritesheets.containsKey(key)) {
+			assert false : "Error: Tried to access spritesheet '" + resourceName + "' and it has not been added to asset pool.";
+			return null;
 		}
+		return acquire(() -> {
+			AssetPool.lookups.incrementAndGet();
+			return AssetPool.spritesheets.get(key);
+		});
+	}
+
+	/**
+	 * Uploads the images decoded in the background, for at most the upload budget. It is called
+	 * by the main loop once per frame, on the GL thread.
+	 *
+	 * @return The number of textures uploaded.
+	 */
+	public static int uploadPendingTextures() {
+		return loader.uploadPending(uploadBudget);
+	}
+
+	/**
+	 * Sets how long the texture uploads may take each frame
+	 *
+	 * @param budgetNanos The budget in nanoseconds, 2 ms by default.
+	 */
+	public static void setUploadBudget(long budgetNanos) {
+		AssetPool.uploadBudget = budgetNanos;
+	}
+
+	/**
+	 * Returns the loader of the asynchronous textures, to configure it or to check how many
+	 * textures are still loading
+	 *
+	 * @return The texture loader.
+	 */
+	public static TextureLoader loader() {
+		return AssetPool.loader;
+	}
+
+	/**
+	 * Adds a spritesheet to the pool. If its texture belongs to the pool, the spritesheet holds a
+	 * reference to it for as long as it stays in the pool.
+	 *
+	 * @param resourceName The name of the spritesheet.
+	 * @param spritesheet  The spritesheet.
+	 */
+	public static void addSpritesheet(String resourceName, Spritesheet spritesheet) {
+		AssetPool.spritesheets.computeIfAbsent(key(resourceName), k -> {
+			Entry<Spritesheet> entry = new Entry<>(AssetPool.spritesheets, k, spritesheet);
+			Texture texture = spritesheet.getTexture();
+			if (texture != null && texture.getFilepath() != null) {
+				Entry<Texture> textureEntry = AssetPool.textures.get(key(texture.getFilepath()));
+				if (textureEntry != null && textureEntry.asset == texture) {
+					entry.dependency = acquire(() -> textureEntry);
+				}
+			}
+			return entry;
+		});
 	}
 
 	public static Spritesheet getSpritesheet(String resourceName) {
-		File file = new File(resourceName);
-		if (!AssetPool.spritesheets.containsKey(file.getAbsolutePath())) {
+		String key = key(resourceName);
+		Spritesheet spritesheet = pin(() -> {
+			AssetPool.lookups.incrementAndGet();
+			return AssetPool.spritesheets.get(key);
+		});
+		if (spritesheet == null) {
+			AssetPool.misses.incrementAndGet();
 			assert false : "Error: Tried to access spritesheet '" + resourceName + "' and it has not been added to asset pool.";
 		}
-		return AssetPool.spritesheets.getOrDefault(file.getAbsolutePath(), null);
+		return spritesheet;
+	}
+
+	/**
+	 * Sets the estimated texture memory the pool may hold before it evicts unused assets
+	 *
+	 * @param bytes The budget in bytes, 256 MB by default.
+	 */
+	public static void setMemoryBudget(long bytes) {
+		synchronized (AssetPool.unused) {
+			AssetPool.memoryBudget = bytes;
+			evictOverBudget();
+		}
+	}
+
+	/**
+	 * Returns the estimated GPU memory of the textures in the pool, counting width times height
+	 * times channels for each one
+	 *
+	 * @return The resident memory in bytes.
+	 */
+	public static long residentBytes() {
+		long bytes = 0;
+		for (Entry<Texture> entry : AssetPool.textures.values()) {
+			bytes += entry.asset.gpuBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns how many lookups found their asset already loaded
+	 *
+	 * @return The number of hits.
+	 */
+	public static long hits() {
+		return AssetPool.lookups.get() - AssetPool.misses.get();
+	}
+
+	/**
+	 * Returns how many lookups had to load their asset, or didn't find it
+	 *
+	 * @return The number of misses.
+	 */
+	public static long misses() {
+		return AssetPool.misses.get();
+	}
+
+	/**
+	 * Returns how many unused assets were deleted to stay within the memory budget
+	 *
+	 * @return The number of evictions.
+	 */
+	public static long evictions() {
+		return AssetPool.evictions.get();
+	}
+
+	/**
+	 * Marks the asset given by the lookup as never evicted, for the callers of the get methods
+	 * that never release. The lookup is done again if the entry was evicted in between.
+	 *
+	 * @param lookup Finds or loads the entry.
+	 * @return The asset, or null if the lookup found nothing.
+	 */
+	private static <T> T pin(Supplier<Entry<T>> lookup) {
+		while (true) {
+			Entry<T> entry = lookup.get();
+			if (entry == null) {
+				return null;
+			}
+			synchronized (AssetPool.unused) {
+				if (!entry.evicted) {
+					entry.pinned = true;
+					AssetPool.unused.remove(entry);
+					return entry.asset;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes a reference to the entry given by the lookup. The lookup is done again if the entry
+	 * was evicted between the lookup and the reference being taken.
+	 *
+	 * @param lookup Finds or loads the entry.
+	 * @return A new handle to the asset, or null if the lookup found nothing.
+	 */
+	private static <T> AssetHandle<T> acquire(Supplier<Entry<T>> lookup) {
+		while (true) {
+			Entry<T> entry = lookup.get();
+			if (entry == null) {
+				return null;
+			}
+			synchronized (AssetPool.unused) {
+				if (!entry.evicted) {
+					entry.refs++;
+					AssetPool.unused.remove(entry);
+					return new AssetHandle<>(entry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops a reference taken by {@link #acquire(Supplier)}. An entry left without references
+	 * goes to the end of the least recently used list, then the list is trimmed to the budget.
+	 *
+	 * @param entry The entry of the released asset.
+	 */
+	static void release(Entry<?> entry) {
+		synchronized (AssetPool.unused) {
+			dropReference(entry);
+			evictOverBudget();
+		}
+	}
+
+	/**
+	 * Decrements the reference count of the entry and queues it as unused when it reaches zero.
+	 * It is called with the lock of the unused list held.
+	 *
+	 * @param entry The entry of the released asset.
+	 */
+	private static void dropReference(Entry<?> entry) {
+		entry.refs--;
+		if (entry.refs == 0 && !entry.pinned) {
+			AssetPool.unused.add(entry);
+		}
+	}
+
+	/**
+	 * Evicts the least recently released assets until the textures fit in the memory budget or
+	 * there is nothing left to evict. It is called with the lock of the unused list held.
+	 */
+	private static void evictOverBudget() {
+		long resident = residentBytes();
+		while (resident > AssetPool.memoryBudget && !AssetPool.unused.isEmpty()) {
+			Iterator<Entry<?>> oldest = AssetPool.unused.iterator();
+			Entry<?> entry = oldest.next();
+			oldest.remove();
+			if (entry.asset instanceof Texture) {
+				resident -= ((Texture) entry.asset).gpuBytes();
+			}
+			evict(entry);
+		}
+	}
+
+	/**
+	 * Removes an entry from its map and deletes its asset. An evicted texture leaves the texture
+	 * arrays it was stored in. The reference a spritesheet holds on its texture is dropped, which
+	 * may queue the texture for the same eviction pass.
+	 *
+	 * @param entry The unused entry to evict.
+	 */
+	private static void evict(Entry<?> entry) {
+		entry.evicted = true;
+		entry.map.remove(entry.key, entry);
+		if (entry.asset instanceof Texture) {
+			synchronized (AssetPool.textureArrays) {
+				for (TextureArray array : AssetPool.textureArrays) {
+					array.release((Texture) entry.asset);
+				}
+			}
+		}
+		destroy(entry.asset);
+		if (entry.dependency != null) {
+			dropReference(entry.dependency.entry());
+		}
+		AssetPool.evictions.incrementAndGet();
+	}
+
+	/**
+	 * Deletes the GL objects of a texture or a shader
+	 *
+	 * @param asset The asset to delete.
+	 */
+	private static void destroy(Object asset) {
+		if (asset instanceof Texture) {
+			((Texture) asset).destroy();
+		} else if (asset instanceof Shader) {
+			((Shader) asset).destroy();
+		}
+	}
+
+	/**
+	 * Packs every texture loaded so far into an atlas and moves the sprites of all the spritesheets
+	 * onto it. The sprite renderers already drawing one of those sprites are marked dirty, so their
+	 * batches pick up the new texture and texture coordinates. Sprites created from a texture later
+	 * on can be moved with {@link TextureAtlas#remap(components.Sprite)}.
+	 *
+	 * @param pageSize The width and height of an atlas page in pixels.
+	 * @param padding  The empty pixels left between two images.
+	 * @return The atlas.
+	 */
+	public static TextureAtlas buildAtlas(int pageSize, int padding) {
+		List<Texture> loaded = new ArrayList<>();
+		for (Entry<Texture> entry : AssetPool.textures.values()) {
+			loaded.add(entry.asset);
+		}
+		AssetPool.atlas = TextureAtlas.build(loaded, pageSize, padding);
+		Set<Sprite> remapped = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Entry<Spritesheet> entry : AssetPool.spritesheets.values()) {
+			entry.asset.useAtlas(AssetPool.atlas, remapped);
+		}
+		synchronized (AssetPool.renderers) {
+			for (Renderer renderer : AssetPool.renderers) {
+				renderer.spritesChanged(remapped);
+			}
+		}
+		return AssetPool.atlas;
+	}
+
+	/**
+	 * Registers a renderer, so that the sprites it draws are refreshed when they are moved onto
+	 * the atlas. The pool doesn't keep the renderer alive.
+	 *
+	 * @param renderer The renderer.
+	 */
+	public static void addRenderer(Renderer renderer) {
+		AssetPool.renderers.add(renderer);
+	}
+
+	/**
+	 * Registers a texture array, so that the layer of a texture is freed when the texture is
+	 * evicted. The pool doesn't keep the array alive.
+	 *
+	 * @param array The texture array.
+	 */
+	public static void addTextureArray(TextureArray array) {
+		AssetPool.textureArrays.add(array);
+	}
+
+	/**
+	 * Returns the atlas built by {@link #buildAtlas(int, int)}, or null if there is none
+	 *
+	 * @return The texture atlas.
+	 */
+	public static TextureAtlas getAtlas() {
+		return AssetPool.atlas;
+	}
+
+	/**
+	 * An asset of the pool with its reference count. The count and the flags are guarded by the
+	 * lock of the unused list.
+	 */
+	static final class Entry<T> {
+		private final ConcurrentMap<String, Entry<T>> map;
+		private final String key;
+		final T asset;
+		private int refs;
+		private boolean pinned, evicted;
+		private AssetHandle<?> dependency;
+
+		private Entry(ConcurrentMap<String, Entry<T>> map, String key, T asset) {
+			this.map = map;
+			this.key = key;
+			this.asset = asset;
+		}
 	}
 }
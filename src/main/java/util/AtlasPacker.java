@@ -0,0 +1,187 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs rectangles into fixed-size pages with the MaxRects algorithm (best short side fit). It only
+ * deals with integer sizes and positions, so it runs without any GL context. Rectangles are placed
+ * in the order they are given; packing them from the largest to the smallest gives the tightest
+ * pages.
+ */
+public class AtlasPacker {
+
+	private final int pageWidth, pageHeight, padding;
+	private final List<List<Rect>> freeRects;
+
+	/**
+	 * @param pageWidth  The width of a page in pixels.
+	 * @param pageHeight The height of a page in pixels.
+	 * @param padding    The empty pixels kept on the right and top of every rectangle.
+	 */
+	public AtlasPacker(int pageWidth, int pageHeight, int padding) {
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+		this.padding = padding;
+		this.freeRects = new ArrayList<>();
+	}
+
+	/**
+	 * Finds a place for a rectangle, opening a new page when none of the existing ones has room
+	 *
+	 * @param width  The width of the rectangle.
+	 * @param height The height of the rectangle.
+	 * @return Where the rectangle was placed, or null if it is bigger than a page.
+	 */
+	public Placement pack(int width, int height) {
+		int paddedWidth = width + padding, paddedHeight = height + padding;
+		if (paddedWidth > pageWidth + padding || paddedHeight > pageHeight + padding) {
+			return null;
+		}
+
+		for (int page = 0; page < freeRects.size(); page++) {
+			Rect spot = findSpot(freeRects.get(page), paddedWidth, paddedHeight);
+			if (spot != null) {
+				return place(page, spot, width, height);
+			}
+		}
+
+		List<Rect> free = new ArrayList<>();
+		free.add(new Rect(0, 0, pageWidth + padding, pageHeight + padding));
+		freeRects.add(free);
+		int page = freeRects.size() - 1;
+		return place(page, findSpot(free, paddedWidth, paddedHeight), width, height);
+	}
+
+	/**
+	 * Returns how many pages have been opened so far
+	 *
+	 * @return The number of pages.
+	 */
+	public int pageCount() {
+		return freeRects.size();
+	}
+
+	/**
+	 * Returns the width of a page
+	 *
+	 * @return The page width in pixels.
+	 */
+	public int pageWidth() {
+		return this.pageWidth;
+	}
+
+	/**
+	 * Returns the height of a page
+	 *
+	 * @return The page height in pixels.
+	 */
+	public int pageHeight() {
+		return this.pageHeight;
+	}
+
+	/**
+	 * Picks the free rectangle that leaves the shortest leftover side once the new rectangle is in
+	 *
+	 * @param free   The free rectangles of a page.
+	 * @param width  The padded width of the new rectangle.
+	 * @param height The padded height of the new rectangle.
+	 * @return A rectangle of the new size at the best position, or null if it doesn't fit.
+	 */
+	private static Rect findSpot(List<Rect> free, int width, int height) {
+		Rect best = null;
+		int bestShort = Integer.MAX_VALUE, bestLong = Integer.MAX_VALUE;
+		for (Rect r : free) {
+			if (r.width >= width && r.height >= height) {
+				int leftoverX = r.width - width, leftoverY = r.height - height;
+				int shortSide = Math.min(leftoverX, leftoverY), longSide = Math.max(leftoverX, leftoverY);
+				if (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong)) {
+					best = new Rect(r.x, r.y, width, height);
+					bestShort = shortSide;
+					bestLong = longSide;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Splits every free rectangle of the page that overlaps the new one, then drops the free
+	 * rectangles that are contained in another
+	 *
+	 * @param page   The page the rectangle goes in.
+	 * @param used   The padded rectangle being placed.
+	 * @param width  The unpadded width of the rectangle.
+	 * @param height The unpadded height of the rectangle.
+	 * @return The placement of the rectangle.
+	 */
+	private Placement place(int page, Rect used, int width, int height) {
+		List<Rect> free = freeRects.get(page);
+		List<Rect> split = new ArrayList<>();
+		for (int i = free.size() - 1; i >= 0; i--) {
+			Rect r = free.get(i);
+			if (!r.intersects(used)) {
+				continue;
+			}
+			free.remove(i);
+			if (used.x > r.x) {
+				split.add(new Rect(r.x, r.y, used.x - r.x, r.height));
+			}
+			if (used.x + used.width < r.x + r.width) {
+				split.add(new Rect(used.x + used.width, r.y, r.x + r.width - used.x - used.width, r.height));
+			}
+			if (used.y > r.y) {
+				split.add(new Rect(r.x, r.y, r.width, used.y - r.y));
+			}
+			if (used.y + used.height < r.y + r.height) {
+				split.add(new Rect(r.x, used.y + used.height, r.width, r.y + r.height - used.y - used.height));
+			}
+		}
+		free.addAll(split);
+
+		for (int i = free.size() - 1; i >= 0; i--) {
+			for (int j = 0; j < free.size(); j++) {
+				if (i != j && free.get(j).contains(free.get(i))) {
+					free.remove(i);
+					break;
+				}
+			}
+		}
+
+		return new Placement(page, used.x, used.y, width, height);
+	}
+
+	/**
+	 * Where a rectangle ended up: its page and the position of its bottom-left corner.
+	 */
+	public static class Placement {
+		public final int page, x, y, width, height;
+
+		public Placement(int page, int x, int y, int width, int height) {
+			this.page = page;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	private static class Rect {
+		private final int x, y, width, height;
+
+		private Rect(int x, int y, int width, int height) {
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		private boolean intersects(Rect o) {
+			return x < o.x + o.width && o.x < x + width && y < o.y + o.height && o.y < y + height;
+		}
+
+		private boolean contains(Rect o) {
+			return o.x >= x && o.y >= y && o.x + o.width <= x + width && o.y + o.height <= y + height;
+		}
+	}
+}
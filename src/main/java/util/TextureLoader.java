@@ -0,0 +1,214 @@
+package util;
+
+import org.lwjgl.BufferUtils;
+import renderer.GLState;
+import renderer.Texture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+
+/**
+ * Decodes images on a pool of worker threads and uploads them on the GL thread, a few per frame.
+ * Only the decoding leaves the GL thread: the workers never touch OpenGL, they hand the pixels
+ * back through a queue that {@link #uploadPending(long)} drains within a time budget. An image
+ * that can't be decoded keeps its placeholder and is recorded in {@link #failures()}.
+ */
+public class TextureLoader {
+	private final ExecutorService workers;
+	private final Queue<Decoded> decoded = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+	private boolean usePixelBuffers;
+	private int pixelBufferID;
+	private long pixelBufferSize;
+
+	/**
+	 * @param threads The number of worker threads decoding images.
+	 */
+	public TextureLoader(int threads) {
+		AtomicInteger count = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "texture-loader-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Makes the uploads go through a pixel unpack buffer, so the driver can copy the pixels to the
+	 * GPU asynchronously instead of reading them from client memory inside glTexImage2D.
+	 *
+	 * @param usePixelBuffers True to upload through a pixel buffer object.
+	 */
+	public void setUsePixelBuffers(boolean usePixelBuffers) {
+		this.usePixelBuffers = usePixelBuffers;
+	}
+
+	/**
+	 * Queues the image of the texture for decoding. The texture must have been created with
+	 * {@link Texture#initPlaceholder(String)} and keeps its placeholder until it is uploaded.
+	 *
+	 * @param texture The texture to load.
+	 */
+	public void load(Texture texture) {
+		pending.incrementAndGet();
+		workers.execute(() -> {
+			try {
+				decoded.add(decode(texture));
+			} catch (Exception e) {
+				e.printStackTrace();
+				failures.add(new Failure(texture.getFilepath(), e));
+				pending.decrementAndGet();
+			}
+		});
+	}
+
+	/**
+	 * Uploads decoded images until the queue is empty or the budget is spent. At least one image
+	 * is uploaded per call, so a budget too small for any image can't stall the loading.
+	 *
+	 * @param budgetNanos The time the uploads may take this frame, in nanoseconds.
+	 * @return The number of textures uploaded.
+	 */
+	public int uploadPending(long budgetNanos) {
+		long start = System.nanoTime();
+		int uploaded = 0;
+		Decoded image;
+		while ((uploaded == 0 || System.nanoTime() - start < budgetNanos) && (image = decoded.poll()) != null) {
+			try {
+				upload(image);
+			} finally {
+				stbi_image_free(image.pixels);
+				pending.decrementAndGet();
+			}
+			uploaded++;
+		}
+		return uploaded;
+	}
+
+	/**
+	 * Returns the number of textures queued or decoded but not uploaded yet
+	 *
+	 * @return The number of pending textures.
+	 */
+	public int pending() {
+		return pending.get();
+	}
+
+	/**
+	 * Returns the images that couldn't be decoded so far. Their textures keep the placeholder.
+	 *
+	 * @return A copy of the list of failures, oldest first.
+	 */
+	public List<Failure> failures() {
+		return new ArrayList<>(failures);
+	}
+
+	/**
+	 * Decodes the image of a texture. It runs on a worker thread and must not call OpenGL.
+	 *
+	 * @param texture The texture whose image is decoded.
+	 * @return The decoded image.
+	 * @throws IOException If the image couldn't be read.
+	 */
+	private static Decoded decode(Texture texture) throws IOException {
+		IntBuffer width = BufferUtils.createIntBuffer(1);
+		IntBuffer height = BufferUtils.createIntBuffer(1);
+		IntBuffer channels = BufferUtils.createIntBuffer(1);
+		stbi_set_flip_vertically_on_load(true);
+		ByteBuffer pixels = stbi_load(texture.getFilepath(), width, height, channels, 0);
+		if (pixels == null) {
+			throw new IOException("Could not load image '" + texture.getFilepath() + "': " + stbi_failure_reason());
+		}
+		return new Decoded(texture, pixels, width.get(0), height.get(0), channels.get(0));
+	}
+
+	/**
+	 * Sends a decoded image to its texture
+	 *
+	 * @param image The decoded image.
+	 */
+	private void upload(Decoded image) {
+		if (usePixelBuffers) {
+			long size = image.pixels.remaining();
+			if (pixelBufferID == 0) {
+				pixelBufferID = glGenBuffers();
+			}
+			GLState.bindBuffer(GL_PIXEL_UNPACK_BUFFER, pixelBufferID);
+			if (size > pixelBufferSize) {
+				pixelBufferSize = size;
+			}
+			// Orphan the previous storage so the driver doesn't wait for the last upload
+			glBufferData(GL_PIXEL_UNPACK_BUFFER, pixelBufferSize, GL_STREAM_DRAW);
+			ByteBuffer mapped = glMapBuffer(GL_PIXEL_UNPACK_BUFFER, GL_WRITE_ONLY, pixelBufferSize, null);
+			assert mapped != null : "Error: (TextureLoader) Could not map the pixel buffer.";
+			memCopy(image.pixels, mapped);
+			glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+			image.texture.upload(image.width, image.height, image.channels, null);
+			GLState.bindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+		} else {
+			image.texture.upload(image.width, image.height, image.channels, image.pixels);
+		}
+	}
+
+	/**
+	 * An image that couldn't be decoded, with the reason
+	 */
+	public static class Failure {
+		private final String filepath;
+		private final Exception cause;
+
+		private Failure(String filepath, Exception cause) {
+			this.filepath = filepath;
+			this.cause = cause;
+		}
+
+		/**
+		 * Returns the path of the image that failed
+		 *
+		 * @return The file path.
+		 */
+		public String getFilepath() {
+			return this.filepath;
+		}
+
+		/**
+		 * Returns the error thrown while decoding the image
+		 *
+		 * @return The exception.
+		 */
+		public Exception getCause() {
+			return this.cause;
+		}
+	}
+
+	/**
+	 * An image decoded by a worker, waiting for the GL thread
+	 */
+	private static class Decoded {
+		private final Texture texture;
+		private final ByteBuffer pixels;
+		private final int width, height, channels;
+
+		private Decoded(Texture texture, ByteBuffer pixels, int width, int height, int channels) {
+			this.texture = texture;
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			this.channels = channels;
+		}
+	}
+}
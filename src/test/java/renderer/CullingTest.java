@@ -0,0 +1,101 @@
+package renderer;
+
+import glengine.Camera;
+import org.joml.Vector2f;
+import org.joml.Vector4f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CullingTest {
+	private static final float VIEW_WIDTH = 32.0f * 40.0f;
+	private static final float VIEW_HEIGHT = 32.0f * 21.0f;
+
+	@Test
+	void viewBoundsStartAtTheCameraPosition() {
+		Camera camera = new Camera(new Vector2f(-100.0f, 250.0f));
+		Vector4f view = camera.getViewBounds(new Vector4f());
+		assertEquals(new Vector4f(-100.0f, 250.0f, -100.0f + VIEW_WIDTH, 250.0f + VIEW_HEIGHT), view);
+	}
+
+	@Test
+	void viewBoundsFollowTheCamera() {
+		Camera camera = new Camera(new Vector2f());
+		camera.position.set(64.0f, 32.0f);
+		Vector4f view = camera.getViewBounds(new Vector4f());
+		assertEquals(64.0f, view.x);
+		assertEquals(32.0f, view.y);
+		assertEquals(64.0f + VIEW_WIDTH, view.z);
+		assertEquals(32.0f + VIEW_HEIGHT, view.w);
+	}
+
+	@Test
+	void viewBoundsHaveTheSizeOfTheProjection() {
+		Camera camera = new Camera(new Vector2f(10.0f, 20.0f));
+		camera.setProjectionSize(640.0f, 360.0f);
+		assertEquals(new Vector4f(10.0f, 20.0f, 650.0f, 380.0f), camera.getViewBounds(new Vector4f()));
+	}
+
+	@Test
+	void unionHoldsEverySprite() {
+		float[] sprites = {
+				0, 0, 32, 32,
+				-64, 100, -32, 132,
+				500, -20, 532, 12
+		};
+		Vector4f bounds = Bounds.union(sprites, 3, new Vector4f());
+		assertEquals(new Vector4f(-64, -20, 532, 132), bounds);
+	}
+
+	@Test
+	void unionOnlyReadsTheGivenCount() {
+		float[] sprites = {
+				0, 0, 32, 32,
+				1000, 1000, 1032, 1032
+		};
+		assertEquals(new Vector4f(0, 0, 32, 32), Bounds.union(sprites, 1, new Vector4f()));
+	}
+
+	@Test
+	void emptyUnionTouchesNothing() {
+		Vector4f bounds = Bounds.union(new float[0], 0, new Vector4f());
+		assertFalse(Bounds.touches(bounds, new Vector4f(-1e9f, -1e9f, 1e9f, 1e9f)));
+	}
+
+	@Test
+	void batchInsideOrAcrossTheViewIsDrawn() {
+		Vector4f view = new Camera(new Vector2f()).getViewBounds(new Vector4f());
+		assertTrue(Bounds.touches(new Vector4f(100, 100, 200, 200), view));
+		assertTrue(Bounds.touches(new Vector4f(-50, -50, 50, 50), view));
+		assertTrue(Bounds.touches(new Vector4f(-1e4f, -1e4f, 1e4f, 1e4f), view));
+	}
+
+	@Test
+	void batchOutsideTheViewIsCulled() {
+		Vector4f view = new Camera(new Vector2f()).getViewBounds(new Vector4f());
+		assertFalse(Bounds.touches(new Vector4f(-100, 0, -1, 32), view));
+		assertFalse(Bounds.touches(new Vector4f(VIEW_WIDTH + 1, 0, VIEW_WIDTH + 33, 32), view));
+		assertFalse(Bounds.touches(new Vector4f(0, -100, 32, -1), view));
+		assertFalse(Bounds.touches(new Vector4f(0, VIEW_HEIGHT + 1, 32, VIEW_HEIGHT + 33), view));
+	}
+
+	@Test
+	void batchOnTheEdgeOfTheViewIsDrawn() {
+		Vector4f view = new Camera(new Vector2f()).getViewBounds(new Vector4f());
+		assertTrue(Bounds.touches(new Vector4f(-32, 0, 0, 32), view));
+		assertTrue(Bounds.touches(new Vector4f(VIEW_WIDTH, 0, VIEW_WIDTH + 32, 32), view));
+	}
+
+	@Test
+	void spriteRectanglesAreReadAtTheirOffset() {
+		Vector4f view = new Vector4f(0, 0, 100, 100);
+		float[] sprites = {
+				-50, -50, -10, -10,
+				10, 10, 20, 20
+		};
+		assertFalse(Bounds.touches(sprites, 0, view));
+		assertTrue(Bounds.touches(sprites, 4, view));
+	}
+}
@@ -0,0 +1,100 @@
+package renderer;
+
+import org.joml.Vector4f;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VertexFormatTest {
+	private static final float UNORM8_STEP = 1.0f / 255.0f;
+	private static final float UNORM16_STEP = 1.0f / 65535.0f;
+
+	@Test
+	void packUnorm8MapsTheEndsOfTheRange() {
+		assertEquals(0, VertexFormat.packUnorm8(0.0f));
+		assertEquals(255, VertexFormat.packUnorm8(1.0f));
+	}
+
+	@Test
+	void packUnorm8ClampsOutOfRangeValues() {
+		assertEquals(0, VertexFormat.packUnorm8(-0.5f));
+		assertEquals(255, VertexFormat.packUnorm8(1.5f));
+	}
+
+	@Test
+	void packUnorm8RoundsToTheNearestStep() {
+		assertEquals(128, VertexFormat.packUnorm8(128.0f / 255.0f));
+		assertEquals(127, VertexFormat.packUnorm8(127.49f / 255.0f));
+		assertEquals(128, VertexFormat.packUnorm8(127.51f / 255.0f));
+		assertEquals(0, VertexFormat.packUnorm8(0.49f / 255.0f));
+		assertEquals(1, VertexFormat.packUnorm8(0.51f / 255.0f));
+		assertEquals(254, VertexFormat.packUnorm8(254.49f / 255.0f));
+		assertEquals(255, VertexFormat.packUnorm8(254.51f / 255.0f));
+	}
+
+	@Test
+	void packUnorm16MapsTheEndsOfTheRange() {
+		assertEquals(0, VertexFormat.packUnorm16(0.0f) & 0xFFFF);
+		assertEquals(65535, VertexFormat.packUnorm16(1.0f) & 0xFFFF);
+		assertEquals(0, VertexFormat.packUnorm16(-1.0f) & 0xFFFF);
+		assertEquals(65535, VertexFormat.packUnorm16(2.0f) & 0xFFFF);
+	}
+
+	@Test
+	void packUnorm16RoundsToTheNearestStep() {
+		assertEquals(32768, VertexFormat.packUnorm16(0.5f) & 0xFFFF);
+		assertEquals(1000, VertexFormat.packUnorm16(1000.49f / 65535.0f) & 0xFFFF);
+		assertEquals(1001, VertexFormat.packUnorm16(1000.51f / 65535.0f) & 0xFFFF);
+	}
+
+	@Test
+	void packColorStoresRedAtTheLowestAddress() {
+		ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+		buffer.putInt(0, VertexFormat.packColor(new Vector4f(1.0f, 0.5f, 0.0f, 128.0f / 255.0f)));
+
+		assertEquals(255, buffer.get(0) & 0xFF);
+		assertEquals(128, buffer.get(1) & 0xFF);
+		assertEquals(0, buffer.get(2) & 0xFF);
+		assertEquals(128, buffer.get(3) & 0xFF);
+	}
+
+	@Test
+	void packedVerticesDecodeToTheStandardOnes() {
+		Vector4f[] colors = {
+				new Vector4f(0, 0, 0, 0),
+				new Vector4f(1, 1, 1, 1),
+				new Vector4f(0.25f, 0.5f, 0.75f, 0.9f),
+				new Vector4f(0.001f, 0.999f, 0.3333f, 0.6667f)
+		};
+		float[][] vertices = {
+				{0.0f, 0.0f, 0.0f, 0.0f},
+				{32.0f, 64.0f, 1.0f, 1.0f},
+				{-123.5f, 987.25f, 0.125f, 0.875f},
+				{1e5f, -1e-3f, 0.3f, 0.7f}
+		};
+		int[] texIds = {0, 1, 7, 8};
+
+		ByteBuffer standard = ByteBuffer.allocate(VertexFormat.STANDARD.stride()).order(ByteOrder.nativeOrder());
+		ByteBuffer packed = ByteBuffer.allocate(VertexFormat.PACKED.stride()).order(ByteOrder.nativeOrder());
+		for (int i = 0; i < vertices.length; i++) {
+			float[] v = vertices[i];
+			Vector4f color = colors[i];
+			VertexFormat.STANDARD.putVertex(standard, 0, v[0], v[1], color, v[2], v[3], texIds[i]);
+			VertexFormat.PACKED.putVertex(packed, 0, v[0], v[1], color, v[2], v[3], texIds[i]);
+
+			assertEquals(standard.getFloat(0), packed.getFloat(0));
+			assertEquals(standard.getFloat(4), packed.getFloat(4));
+			for (int c = 0; c < 4; c++) {
+				float expected = standard.getFloat(8 + c * 4);
+				float decoded = (packed.get(8 + c) & 0xFF) / 255.0f;
+				assertEquals(expected, decoded, UNORM8_STEP / 2 + 1e-6f);
+			}
+			assertEquals(standard.getFloat(24), (packed.getShort(12) & 0xFFFF) / 65535.0f, UNORM16_STEP / 2 + 1e-6f);
+			assertEquals(standard.getFloat(28), (packed.getShort(14) & 0xFFFF) / 65535.0f, UNORM16_STEP / 2 + 1e-6f);
+			assertEquals((int) standard.getFloat(32), packed.get(16) & 0xFF);
+		}
+	}
+}
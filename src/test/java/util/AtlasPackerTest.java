@@ -0,0 +1,86 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AtlasPackerTest {
+	private static final int PAGE = 256;
+	private static final int PADDING = 2;
+
+	@Test
+	void placedRectanglesNeverOverlap() {
+		List<AtlasPacker.Placement> placements = packRandom(new AtlasPacker(PAGE, PAGE, PADDING), 200);
+		for (int i = 0; i < placements.size(); i++) {
+			for (int j = i + 1; j < placements.size(); j++) {
+				AtlasPacker.Placement a = placements.get(i), b = placements.get(j);
+				if (a.page == b.page) {
+					assertFalse(overlap(a, b, PADDING), "Placements " + i + " and " + j + " overlap.");
+				}
+			}
+		}
+	}
+
+	@Test
+	void placedRectanglesStayInsideThePage() {
+		for (AtlasPacker.Placement p : packRandom(new AtlasPacker(PAGE, PAGE, PADDING), 200)) {
+			assertTrue(p.x >= 0 && p.y >= 0);
+			assertTrue(p.x + p.width <= PAGE, "Placement sticks out on the right.");
+			assertTrue(p.y + p.height <= PAGE, "Placement sticks out on the top.");
+		}
+	}
+
+	@Test
+	void rectangleFillingThePageExactlyFits() {
+		AtlasPacker packer = new AtlasPacker(PAGE, PAGE, PADDING);
+		AtlasPacker.Placement p = packer.pack(PAGE, PAGE);
+		assertNotNull(p);
+		assertEquals(0, p.x);
+		assertEquals(0, p.y);
+	}
+
+	@Test
+	void rectangleLargerThanThePageIsRejected() {
+		AtlasPacker packer = new AtlasPacker(PAGE, PAGE, PADDING);
+		assertNull(packer.pack(PAGE + 1, 16));
+		assertNull(packer.pack(16, PAGE + 1));
+		assertEquals(0, packer.pageCount());
+	}
+
+	@Test
+	void fullPageRollsOverToANewPage() {
+		AtlasPacker packer = new AtlasPacker(PAGE, PAGE, PADDING);
+		int side = PAGE / 2 - PADDING;
+		for (int i = 0; i < 4; i++) {
+			assertEquals(0, packer.pack(side, side).page);
+		}
+		AtlasPacker.Placement next = packer.pack(side, side);
+		assertEquals(1, next.page);
+		assertEquals(2, packer.pageCount());
+	}
+
+	private static List<AtlasPacker.Placement> packRandom(AtlasPacker packer, int count) {
+		Random random = new Random(42);
+		List<AtlasPacker.Placement> placements = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			AtlasPacker.Placement p = packer.pack(1 + random.nextInt(64), 1 + random.nextInt(64));
+			assertNotNull(p);
+			placements.add(p);
+		}
+		assertTrue(packer.pageCount() > 1, "The test should fill more than one page.");
+		return placements;
+	}
+
+	private static boolean overlap(AtlasPacker.Placement a, AtlasPacker.Placement b, int padding) {
+		return a.x < b.x + b.width + padding && b.x < a.x + a.width + padding
+				&& a.y < b.y + b.height + padding && b.y < a.y + a.height + padding;
+	}
+}